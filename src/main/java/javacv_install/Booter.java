@@ -1,7 +1,10 @@
 package javacv_install;
 
+import java.io.File;
 import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -11,6 +14,7 @@ import org.eclipse.aether.RepositorySystemSession.SessionBuilder;
 import org.eclipse.aether.repository.RemoteRepository;
 import org.eclipse.aether.supplier.SessionBuilderSupplier;
 import ij.IJ;
+import ij.Prefs;
 
 
 public final class Booter {
@@ -19,6 +23,10 @@ public final class Booter {
 	private static final String BASE_REPO = "https://repo1.maven.org/maven2/"; // "https://repo.maven.apache.org/maven2/"
 	/** Local maven repository path */
 	private static final String LOCAL_REPO = "local-maven-repo";
+	/** Preference key, the user maven repository (~/.m2/repository) is searched too if true (off by default) */
+	public static final String USER_REPO_KEY = "javacv.use_user_repo";
+	/** Preference key with shared read-only repositories (separated by the path separator) */
+	public static final String SHARED_REPOS_KEY = "javacv.shared_repos";
 	
 	
 	private Booter() {
@@ -29,16 +37,63 @@ public final class Booter {
 		return SupplierRepositorySystemFactory.newRepositorySystem();
 	}
 
+	/**
+	 * Returns the path of the local maven repository.
+	 */
+	public static Path getLocalRepositoryPath() {
+		return FileSystems.getDefault().getPath(IJ.getDirectory("imagej") + LOCAL_REPO);
+	}
+
+	/**
+	 * Returns the chain of local repositories: the private one, the only one
+	 * written to, followed by the read-only user (if enabled) and shared
+	 * repositories which exist.
+	 */
+	public static List<Path> getLocalRepositoryPaths() {
+		List<Path> paths = new ArrayList<>();
+		paths.add(getLocalRepositoryPath());
+		if (Prefs.get(USER_REPO_KEY, false)) {
+			Path userRepo = Paths.get(System.getProperty("user.home"), ".m2", "repository");
+			if (Files.isDirectory(userRepo))
+				paths.add(userRepo);
+		}
+		for (String dir : Prefs.get(SHARED_REPOS_KEY, "").split(File.pathSeparator)) {
+			if (dir.trim().isEmpty())
+				continue;
+			Path sharedRepo = Paths.get(dir.trim());
+			if (Files.isDirectory(sharedRepo))
+				paths.add(sharedRepo);
+			else
+				IJLog.log("Shared repository not found: " + sharedRepo);
+		}
+		return paths;
+	}
+
 	public static SessionBuilder newRepositorySystemSession(RepositorySystem system) {
-		Path localRepoPath = FileSystems.getDefault().getPath(IJ.getDirectory("imagej") + LOCAL_REPO);
+		// artifacts of the read-only repositories are used whatever repository they come from
 		return new SessionBuilderSupplier(system).get().setSystemProperties(System.getProperties())
-				.withLocalRepositoryBaseDirectories(localRepoPath)
+				.withLocalRepositoryBaseDirectories(getLocalRepositoryPaths())
+				.setConfigProperty("aether.chainedLocalRepository.ignoreTailAvailability", true)
 				.setRepositoryListener(new ConsoleRepositoryListener())
 				.setTransferListener(new ConsoleTransferListener());
 	}
 	
 	
 
+	/**
+	 * Returns the URL of the remote repository.
+	 */
+	public static String getRepositoryURL() {
+		return BASE_REPO;
+	}
+
+	/**
+	 * Returns the URL of maven-metadata.xml of an artifact in the central repository.
+	 */
+	public static String getMetadataURL(String groupId, String artifactId) {
+		return BASE_REPO + groupId.replace('.', '/') + "/" + artifactId + "/maven-metadata.xml";
+	}
+
 	public static List<RemoteRepository> newRepositories() {
 		return new ArrayList<>(Collections.singletonList(newCentralRepository()));
 	}
@@ -0,0 +1,207 @@
+package javacv_install;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javacv_install.JavaCV_Installer.JavaCVComponent;
+
+/**
+ * Components of released JavaCV versions and the dependencies between them,
+ * kept on disk next to installcfg.xml. Released versions never change, so the
+ * entries do not expire, but they are valid only for the repository they were
+ * read from. Only complete descriptors should be put into the cache.
+ */
+final class ComponentsCache {
+
+	private final File file;
+	private final String repository;
+	private boolean loaded;
+
+	/** components by JavaCV version */
+	private final Map<String, List<JavaCVComponent>> components = new LinkedHashMap<>();
+	/** component dependencies by JavaCV version and component coordinates */
+	private final Map<String, Map<String, List<JavaCVComponent>>> dependencies = new HashMap<>();
+
+	ComponentsCache(File file, String repository) {
+		this.file = file;
+		this.repository = repository;
+	}
+
+	/**
+	 * Returns the components of a JavaCV version, or null if they are not cached.
+	 */
+	synchronized List<JavaCVComponent> getComponents(String version) {
+		load();
+		return components.get(version);
+	}
+
+	synchronized void putComponents(String version, List<JavaCVComponent> comps) {
+		load();
+		components.put(version, new ArrayList<>(comps));
+		save();
+	}
+
+	/**
+	 * Returns the components the given component of a JavaCV version depends on,
+	 * or null if its descriptor has not been read yet.
+	 */
+	synchronized List<JavaCVComponent> getDependencies(String version, JavaCVComponent comp) {
+		load();
+		Map<String, List<JavaCVComponent>> deps = dependencies.get(version);
+		return deps == null ? null : deps.get(key(comp));
+	}
+
+	synchronized void putDependencies(String version, JavaCVComponent comp, List<JavaCVComponent> deps) {
+		load();
+		dependencies.computeIfAbsent(version, v -> new LinkedHashMap<>()).put(key(comp), new ArrayList<>(deps));
+		save();
+	}
+
+	private static String key(JavaCVComponent comp) {
+		return comp.getArtifactName() + ":" + comp.getVersion();
+	}
+
+	private void load() {
+		if (loaded)
+			return;
+		loaded = true;
+		if (!file.exists())
+			return;
+		try {
+			DocumentBuilder dBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+			Document doc = dBuilder.parse(file);
+			doc.getDocumentElement().normalize();
+			if (!repository.equals(doc.getDocumentElement().getAttribute("repository"))) {
+				if (ij.IJ.debugMode)
+					IJLog.log("Components cache is made for another repository. Ignoring.");
+				return;
+			}
+
+			NodeList nVerList = doc.getElementsByTagName("javacv");
+			for (int i = 0; i < nVerList.getLength(); i++) {
+				Element nVer = (Element) nVerList.item(i);
+				String version = nVer.getAttribute("version");
+				boolean listed = Boolean.parseBoolean(nVer.getAttribute("components"));
+				List<JavaCVComponent> comps = new ArrayList<>();
+				Map<String, List<JavaCVComponent>> deps = new LinkedHashMap<>();
+				for (Node n = nVer.getFirstChild(); n != null; n = n.getNextSibling()) {
+					if (n.getNodeType() != Node.ELEMENT_NODE || !n.getNodeName().equals("component"))
+						continue;
+					Element nComp = (Element) n;
+					JavaCVComponent comp = readComponent(nComp);
+					if (Boolean.parseBoolean(nComp.getAttribute("listed")))
+						comps.add(comp);
+					if (Boolean.parseBoolean(nComp.getAttribute("resolved"))) {
+						List<JavaCVComponent> compDeps = new ArrayList<>();
+						NodeList nDepList = nComp.getElementsByTagName("dependency");
+						for (int j = 0; j < nDepList.getLength(); j++)
+							compDeps.add(readComponent((Element) nDepList.item(j)));
+						deps.put(key(comp), compDeps);
+					}
+				}
+				if (listed)
+					components.put(version, comps);
+				if (!deps.isEmpty())
+					dependencies.put(version, deps);
+			}
+		} catch (SAXException | IOException | ParserConfigurationException | ClassCastException e) {
+			IJLog.log("Components cache is incorrect. Ignoring.");
+			if (ij.IJ.debugMode)
+				IJLog.log(e.toString());
+			components.clear();
+			dependencies.clear();
+		}
+	}
+
+	private static JavaCVComponent readComponent(Element elem) {
+		return new JavaCVComponent(elem.getAttribute("artifact"), elem.getAttribute("version"));
+	}
+
+	private void save() {
+		try {
+			DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+			Document doc = builder.newDocument();
+
+			Element root = doc.createElement("JavaCV-components");
+			root.setAttribute("repository", repository);
+			doc.appendChild(root);
+
+			List<String> allVersions = new ArrayList<>(components.keySet());
+			for (String version : dependencies.keySet())
+				if (!allVersions.contains(version))
+					allVersions.add(version);
+
+			for (String version : allVersions) {
+				Element nVer = doc.createElement("javacv");
+				nVer.setAttribute("version", version);
+				root.appendChild(nVer);
+
+				Map<String, Element> nComps = new LinkedHashMap<>();
+				List<JavaCVComponent> comps = components.get(version);
+				if (comps != null) {
+					nVer.setAttribute("components", "true");
+					for (JavaCVComponent comp : comps)
+						componentElement(doc, nVer, nComps, comp).setAttribute("listed", "true");
+				}
+				Map<String, List<JavaCVComponent>> deps = dependencies.get(version);
+				if (deps != null)
+					for (Map.Entry<String, List<JavaCVComponent>> entry : deps.entrySet()) {
+						String[] coords = entry.getKey().split(":", 2);
+						Element nComp = componentElement(doc, nVer, nComps,
+								new JavaCVComponent(coords[0], coords[1]));
+						nComp.setAttribute("resolved", "true");
+						for (JavaCVComponent dep : entry.getValue()) {
+							Element nDep = doc.createElement("dependency");
+							nDep.setAttribute("artifact", dep.getArtifactName());
+							nDep.setAttribute("version", dep.getVersion());
+							nComp.appendChild(nDep);
+						}
+					}
+			}
+
+			Transformer transf = TransformerFactory.newInstance().newTransformer();
+			transf.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+			transf.setOutputProperty(OutputKeys.INDENT, "yes");
+			transf.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+
+			JavaCV_Installer_launcher.checkCreateDirectory(file.getParent());
+			transf.transform(new DOMSource(doc), new StreamResult(file.toURI().getPath()));
+		} catch (ParserConfigurationException | TransformerException e) {
+			IJLog.log("Cannot write " + file + ": " + e);
+		}
+	}
+
+	private static Element componentElement(Document doc, Element nVer, Map<String, Element> nComps,
+			JavaCVComponent comp) {
+		Element nComp = nComps.get(key(comp));
+		if (nComp == null) {
+			nComp = doc.createElement("component");
+			nComp.setAttribute("artifact", comp.getArtifactName());
+			nComp.setAttribute("version", comp.getVersion());
+			nVer.appendChild(nComp);
+			nComps.put(key(comp), nComp);
+		}
+		return nComp;
+	}
+}
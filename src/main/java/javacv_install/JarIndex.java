@@ -0,0 +1,306 @@
+package javacv_install;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import ij.IJ;
+import ij.Prefs;
+
+/**
+ * Index of the jar files of a directory tree, by file name. It is built in one
+ * walk and kept on disk with the modification time of each directory, so an
+ * update reads again only the directories whose content changed. If enabled
+ * with the {@value #WATCH_KEY} preference, a WatchService tells when the tree
+ * must be checked at all.
+ */
+final class JarIndex {
+
+	/** Preference key enabling the watch service on the indexed trees */
+	static final String WATCH_KEY = "javacv.watch_jars";
+	/** Directories modified more recently (ms) are read again on the next update */
+	private static final long MODIFICATION_GRACE = 2000;
+
+	private static final Map<String, JarIndex> INDEXES = new ConcurrentHashMap<>();
+
+	private final Path root;
+	private final File file;
+	/** directory (relative to the root) -> its state at the last read */
+	private Map<String, DirState> dirs = new HashMap<>();
+	/** jar file name -> files with this name */
+	private final NavigableMap<String, List<Jar>> jars = new TreeMap<>();
+	private WatchService watcher;
+	private volatile boolean dirty = true;
+
+	static final class Jar {
+		private final Path path;
+		private final String artifactId;
+		private final String version;
+
+		Jar(Path path) {
+			this.path = path;
+			String name = path.getFileName().toString();
+			this.version = JavaCV_Installer_launcher.getJarVersion(name);
+			int end = name.length();
+			for (int i = 0; i < name.length() - 1; i++)
+				if (name.charAt(i) == '-' && Character.isDigit(name.charAt(i + 1))) {
+					end = i;
+					break;
+				}
+			this.artifactId = end < name.length() ? name.substring(0, end) : name.replace(".jar", "");
+		}
+
+		Path getPath() {
+			return path;
+		}
+
+		String getArtifactId() {
+			return artifactId;
+		}
+
+		String getVersion() {
+			return version;
+		}
+	}
+
+	private static final class DirState {
+		private final long modified;
+		private final List<String> jarNames = new ArrayList<>();
+		private final List<String> subdirs = new ArrayList<>();
+
+		DirState(long modified) {
+			this.modified = modified;
+		}
+	}
+
+	private JarIndex(Path root) {
+		this.root = root;
+		this.file = new File(IJ.getDirectory("plugins") + "JavaCV_Installer" + File.separator + "jarindex-"
+				+ Integer.toHexString(root.toString().hashCode()) + ".xml");
+		load();
+		if (Prefs.get(WATCH_KEY, false))
+			startWatching();
+		rebuild();
+	}
+
+	/**
+	 * Returns the up to date index of the directory tree.
+	 */
+	static JarIndex of(String directory) {
+		// paths of the index start with the directory as given by its first user
+		JarIndex index = INDEXES.computeIfAbsent(Paths.get(directory).toAbsolutePath().normalize().toString(),
+				dir -> new JarIndex(Paths.get(directory)));
+		index.update();
+		return index;
+	}
+
+	/**
+	 * Returns the jars of the tree whose file names start with the prefix.
+	 */
+	synchronized List<Jar> getJars(String prefix) {
+		List<Jar> result = new ArrayList<>();
+		for (List<Jar> list : jars.subMap(prefix, true, prefix + Character.MAX_VALUE, true).values())
+			result.addAll(list);
+		return result;
+	}
+
+	/**
+	 * Returns the jars directly in the given directory whose file names start with
+	 * the prefix.
+	 */
+	synchronized List<Jar> getJars(String directory, String prefix) {
+		Path dir = Paths.get(directory).toAbsolutePath().normalize();
+		List<Jar> result = new ArrayList<>();
+		for (Jar jar : getJars(prefix))
+			if (dir.equals(jar.getPath().getParent().toAbsolutePath().normalize()))
+				result.add(jar);
+		return result;
+	}
+
+	/**
+	 * Reads again the directories modified since the last update, and saves the
+	 * index if anything changed.
+	 */
+	synchronized void update() {
+		if (watcher != null && !dirty)
+			return;
+		dirty = false;
+		Map<String, DirState> newDirs = new HashMap<>();
+		boolean changed;
+		try {
+			changed = update("", newDirs);
+		} catch (IOException e) {
+			if (IJ.debugMode)
+				IJLog.log("Cannot index " + root + ": " + e);
+			dirty = true;
+			return;
+		}
+		changed = changed || newDirs.size() != dirs.size();
+		dirs = newDirs;
+		if (changed) {
+			rebuild();
+			save();
+		}
+	}
+
+	private boolean update(String relDir, Map<String, DirState> newDirs) throws IOException {
+		Path dir = relDir.isEmpty() ? root : root.resolve(relDir);
+		if (!Files.isDirectory(dir))
+			return dirs.containsKey(relDir);
+		long modified = Files.getLastModifiedTime(dir).toMillis();
+		DirState state = dirs.get(relDir);
+		boolean changed = false;
+		if (state == null || state.modified != modified) {
+			// not trusted if modified just now, the next change could get the same time
+			state = new DirState(System.currentTimeMillis() - modified < MODIFICATION_GRACE ? -1 : modified);
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+				for (Path entry : stream) {
+					String name = entry.getFileName().toString();
+					if (Files.isDirectory(entry))
+						state.subdirs.add(name);
+					else if (name.endsWith(".jar"))
+						state.jarNames.add(name);
+				}
+			}
+			changed = true;
+			if (watcher != null)
+				dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+						StandardWatchEventKinds.ENTRY_MODIFY);
+		}
+		newDirs.put(relDir, state);
+		for (String subdir : state.subdirs)
+			changed = update(relDir.isEmpty() ? subdir : relDir + File.separator + subdir, newDirs) || changed;
+		return changed;
+	}
+
+	private void rebuild() {
+		jars.clear();
+		for (Map.Entry<String, DirState> dir : dirs.entrySet()) {
+			Path path = dir.getKey().isEmpty() ? root : root.resolve(dir.getKey());
+			for (String name : dir.getValue().jarNames)
+				jars.computeIfAbsent(name, n -> new ArrayList<>()).add(new Jar(path.resolve(name)));
+		}
+	}
+
+	private void startWatching() {
+		try {
+			watcher = root.getFileSystem().newWatchService();
+		} catch (IOException e) {
+			IJLog.log("Cannot watch " + root + ": " + e);
+			return;
+		}
+		// the directories are registered when read, so all of them are read once
+		dirs.clear();
+		Thread thread = new Thread(() -> {
+			try {
+				while (true) {
+					WatchKey key = watcher.take();
+					key.pollEvents();
+					dirty = true;
+					key.reset();
+				}
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				// stop watching
+			}
+		}, "JavaCV jar index watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void load() {
+		if (!file.exists())
+			return;
+		try {
+			DocumentBuilder dBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+			Document doc = dBuilder.parse(file);
+			Element nRoot = doc.getDocumentElement();
+			if (!root.toString().equals(nRoot.getAttribute("root")))
+				return;
+			NodeList nDirList = nRoot.getElementsByTagName("dir");
+			for (int i = 0; i < nDirList.getLength(); i++) {
+				Element nDir = (Element) nDirList.item(i);
+				DirState state = new DirState(Long.parseLong(nDir.getAttribute("modified")));
+				NodeList nJarList = nDir.getElementsByTagName("jar");
+				for (int j = 0; j < nJarList.getLength(); j++)
+					state.jarNames.add(((Element) nJarList.item(j)).getAttribute("name"));
+				NodeList nSubdirList = nDir.getElementsByTagName("subdir");
+				for (int j = 0; j < nSubdirList.getLength(); j++)
+					state.subdirs.add(((Element) nSubdirList.item(j)).getAttribute("name"));
+				dirs.put(nDir.getAttribute("path"), state);
+			}
+		} catch (SAXException | IOException | ParserConfigurationException | NumberFormatException e) {
+			if (IJ.debugMode)
+				IJLog.log("Cannot read " + file + ": " + e);
+			dirs.clear();
+		}
+	}
+
+	private void save() {
+		try {
+			DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+			Document doc = builder.newDocument();
+
+			Element nRoot = doc.createElement("jar-index");
+			nRoot.setAttribute("root", root.toString());
+			doc.appendChild(nRoot);
+			for (Map.Entry<String, DirState> dir : dirs.entrySet()) {
+				Element nDir = doc.createElement("dir");
+				nDir.setAttribute("path", dir.getKey());
+				nDir.setAttribute("modified", Long.toString(dir.getValue().modified));
+				for (String name : dir.getValue().jarNames) {
+					Element nJar = doc.createElement("jar");
+					nJar.setAttribute("name", name);
+					nDir.appendChild(nJar);
+				}
+				for (String name : dir.getValue().subdirs) {
+					Element nSubdir = doc.createElement("subdir");
+					nSubdir.setAttribute("name", name);
+					nDir.appendChild(nSubdir);
+				}
+				nRoot.appendChild(nDir);
+			}
+
+			Transformer transf = TransformerFactory.newInstance().newTransformer();
+			transf.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+			transf.setOutputProperty(OutputKeys.INDENT, "yes");
+			transf.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+
+			File parent = file.getParentFile();
+			if (!parent.exists() && !parent.mkdirs())
+				return;
+			transf.transform(new DOMSource(doc), new StreamResult(file.toURI().getPath()));
+		} catch (ParserConfigurationException | TransformerException e) {
+			if (IJ.debugMode)
+				IJLog.log("Cannot write " + file + ": " + e);
+		}
+	}
+}
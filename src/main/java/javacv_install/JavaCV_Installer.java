@@ -25,14 +25,25 @@ import java.awt.Dialog;
 import java.awt.FlowLayout;
 import java.awt.Font;
 import java.awt.Frame;
+import java.awt.GraphicsEnvironment;
 import java.awt.Panel;
 import java.awt.event.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.nio.file.*;
 import java.util.*;
-import java.util.function.Predicate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import javax.xml.parsers.*;
@@ -40,8 +51,10 @@ import javax.xml.transform.*;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
+import org.eclipse.aether.RepositoryException;
 import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.RepositorySystemSession.CloseableSession;
+import org.eclipse.aether.RepositorySystemSession.SessionBuilder;
 import org.eclipse.aether.artifact.Artifact;
 import org.eclipse.aether.artifact.DefaultArtifact;
 import org.eclipse.aether.collection.CollectRequest;
@@ -52,10 +65,12 @@ import org.eclipse.aether.util.filter.PatternExclusionsDependencyFilter;
 import org.eclipse.aether.util.filter.PatternInclusionsDependencyFilter;
 import org.eclipse.aether.util.graph.manager.DependencyManagerUtils;
 import org.eclipse.aether.util.graph.transformer.ConflictResolver;
+import org.eclipse.aether.util.repository.SimpleArtifactDescriptorPolicy;
 import org.eclipse.aether.version.Version;
 import org.eclipse.aether.graph.Dependency;
 import org.eclipse.aether.graph.DependencyFilter;
 import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.aether.graph.Exclusion;
 import org.w3c.dom.*;
 import org.xml.sax.SAXException;
 
@@ -63,19 +78,25 @@ import javacv_install.JavaCV_Installer_launcher.VerParser;
 
 public class JavaCV_Installer implements PlugIn {
 
-	private static RepositorySystem repSystem;
-	private static CloseableSession repSession;
-	private static List<RemoteRepository> repList;
-	private static List<String> versions;
-	private static String newestVersion;
+	private static volatile RepositorySystem repSystem;
+	private static volatile CloseableSession repSession;
+	/** Session which resolves from the local repository only */
+	private static volatile CloseableSession offlineSession;
+	private static volatile List<RemoteRepository> repList;
+	private static volatile List<String> versions;
+	private static volatile String newestVersion;
 	private static Map<String, List<JavaCVComponent>> compsByVer;
+	private static ComponentsCache componentsCache;
+	private static LocalRepoCache localRepoCache;
 	private static String[] optionalCompNames;
 	private static boolean[] compSelection;
 	private static int compsPannelInd;
 	private static boolean showInfoMsg;
-	private static String installedJavaCVVersion;
-	private static Set<String> installedComponents;
-	private static Set<String> installedArtifacts;
+	// the installed state is shared with the warm-up thread, the sets are
+	// unmodifiable snapshots which are replaced rather than modified
+	private static volatile String installedJavaCVVersion;
+	private static volatile Set<String> installedComponents;
+	private static volatile Set<String> installedArtifacts;
 	private static List<JavaCVDependency> dependencies;
 	private static String installerDirectory;
 	private static String imagejDirectory;
@@ -84,6 +105,15 @@ public class JavaCV_Installer implements PlugIn {
 	private static String natLibsPath;
 	private static String platformSpecifier;
 	private static boolean restartRequired;
+	private static CompletableFuture<Void> warmUp;
+	private static ExecutorService descriptorPool;
+	private static ExecutorService revalidationPool;
+	/** Requests of this session which were revalidated online */
+	private static Set<String> revalidated;
+	private static boolean leanResolution;
+	private static Map<String, ClassLoader> activatedLoaders;
+	/** Successful checks of this session with the installation state they saw */
+	private static Map<String, String> passedChecks;
 	private boolean beQuiet;
 
 	// Installation constants
@@ -92,6 +122,13 @@ public class JavaCV_Installer implements PlugIn {
 	private static final String IMAGEJ_NAME = "imagej";
 	private static final String PLATFORM_SUFFIX = "-platform";
 	private static final String DIALOG_TITLE = "JavaCV installation";
+	/** Preference key with the time to live (hours) of the cached version list */
+	private static final String VERSIONS_TTL_KEY = "javacv.versions_ttl_hours";
+	private static final double DEFAULT_VERSIONS_TTL = 24;
+	/** Preference key enabling the non-verbose (low memory) resolution */
+	private static final String LEAN_RESOLUTION_KEY = "javacv.lean_resolution";
+	/** Number of component descriptors read concurrently */
+	private static final int DESCRIPTOR_THREADS = 6;
 
 	/** Platform specifier for the 32-bit windows */
 	private static final String WIN_32 = "windows-x86";
@@ -123,30 +160,25 @@ public class JavaCV_Installer implements PlugIn {
 			platformSpecifier = is64 ? WIN_64 : WIN_32;
 		else if (IJ.isMacOSX())
 			platformSpecifier = isarm ? MAC_ARM : MAC;
-		repSystem = Booter.newRepositorySystem();
-		repSession = Booter.newRepositorySystemSession(repSystem)
-				.setConfigProperty(ConflictResolver.CONFIG_PROP_VERBOSE, true)
-                .setConfigProperty(DependencyManagerUtils.CONFIG_PROP_VERBOSE, true)
-                .setSystemProperty("javacpp.platform", platformSpecifier).build();
-		repList = Booter.newRepositories();
 		compsByVer = new HashMap<>();
-		installedComponents = new HashSet<>();
-		installedArtifacts = new HashSet<>();
+		installedComponents = Collections.emptySet();
+		installedArtifacts = Collections.emptySet();
+		activatedLoaders = new HashMap<>();
+		passedChecks = new ConcurrentHashMap<>();
+		revalidated = ConcurrentHashMap.newKeySet();
 		showInfoMsg = false;
 		restartRequired = false;
 		compsPannelInd = -1;
 
 		installerDirectory = IJ.getDirectory("plugins") + "JavaCV_Installer" + File.separator;
+		componentsCache = new ComponentsCache(new File(installerDirectory + "componentscache.xml"),
+				Booter.getRepositoryURL());
+		localRepoCache = new LocalRepoCache(Booter.getLocalRepositoryPath().toAbsolutePath().normalize(),
+				new File(installerDirectory + "localrepo-usage.xml"));
 
 		// Where dependencies are looked for in Fiji or ImageJ
 		getDependenciesPath();
 
-		try {
-			getAvailableVersions();
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
-
 		try {
 			readInstallCfg();
 		} catch (SAXException | IOException | ParserConfigurationException e1) {
@@ -157,6 +189,141 @@ public class JavaCV_Installer implements PlugIn {
 			}
 		}
 
+		// the resolver and the network are only touched in the background
+		warmUp();
+
+	}
+
+	/**
+	 * Starts (once) the background initialization of the repository system and of
+	 * the list of available versions. Class loading and the cheap queries about
+	 * the local installation never wait for it; the returned future can be used to
+	 * wait for the end of the warm-up.
+	 */
+	public static synchronized CompletableFuture<Void> warmUp() {
+		if (warmUp == null)
+			warmUp = CompletableFuture.runAsync(JavaCV_Installer::initResolver, r -> {
+				Thread thread = new Thread(r, "JavaCV installer warm-up");
+				thread.setDaemon(true);
+				thread.start();
+			});
+		return warmUp;
+	}
+
+	private static void initResolver() {
+		repSystem = Booter.newRepositorySystem();
+		// the lean mode does not keep losing nodes and management info in the graph
+		leanResolution = Prefs.get(LEAN_RESOLUTION_KEY, false);
+		repSession = newSession(false);
+		offlineSession = newSession(true);
+		repList = Booter.newRepositories();
+
+		try {
+			loadAvailableVersions();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+
+		// readInstallCfg() could not check the version against the list yet
+		if (installedJavaCVVersion != null && versions != null && !versions.isEmpty()
+				&& !versions.contains(installedJavaCVVersion)) {
+			IJLog.log("Incorrect install config file. Ignoring.");
+			installedJavaCVVersion = null;
+			installedComponents = Collections.emptySet();
+			installedArtifacts = Collections.emptySet();
+		}
+	}
+
+	private static CloseableSession newSession(boolean offline) {
+		SessionBuilder builder = Booter.newRepositorySystemSession(repSystem).setOffline(offline)
+				.setConfigProperty(ConflictResolver.CONFIG_PROP_VERBOSE, !leanResolution)
+				.setConfigProperty(DependencyManagerUtils.CONFIG_PROP_VERBOSE, !leanResolution)
+				.setSystemProperty("javacpp.platform", platformSpecifier);
+		// a descriptor missing from the local repository is an error rather than an
+		// empty descriptor, so that it is read online
+		if (offline)
+			builder.setArtifactDescriptorPolicy(new SimpleArtifactDescriptorPolicy(false, false));
+		return builder.build();
+	}
+
+	interface ResolverCall<T> {
+		T call(CloseableSession session) throws RepositoryException;
+	}
+
+	/**
+	 * Runs a resolver request against the local repository first and repeats it
+	 * online only if something is missing there. A request answered from the local
+	 * repository is repeated online in the background once per session, so the
+	 * metadata in the local repository is fresh for the next calls.
+	 *
+	 * @param key identifies the request among those revalidated in this session
+	 */
+	private static <T> T offlineFirst(String key, ResolverCall<T> call) throws RepositoryException {
+		T result;
+		try {
+			result = call.call(offlineSession);
+		} catch (RepositoryException e) {
+			if (IJ.debugMode)
+				IJLog.log("Not resolved from the local repository, going online: " + e.getMessage());
+			revalidated.add(key);
+			return call.call(repSession);
+		}
+		if (revalidated.add(key))
+			getRevalidationPool().execute(() -> {
+				try {
+					call.call(repSession);
+				} catch (RepositoryException | RuntimeException e) {
+					if (IJ.debugMode)
+						IJLog.log("Cannot revalidate " + key + ": " + e);
+				}
+			});
+		return result;
+	}
+
+	/**
+	 * Returns the pool shared by all resolutions for reading component
+	 * descriptors. Its threads end when idle.
+	 */
+	private static synchronized ExecutorService getDescriptorPool() {
+		if (descriptorPool == null)
+			descriptorPool = newIdlePool(DESCRIPTOR_THREADS, "JavaCV descriptor reader");
+		return descriptorPool;
+	}
+
+	/**
+	 * Returns the single thread which repeats online the requests answered from
+	 * the local repository.
+	 */
+	private static synchronized ExecutorService getRevalidationPool() {
+		if (revalidationPool == null)
+			revalidationPool = newIdlePool(1, "JavaCV metadata revalidation");
+		return revalidationPool;
+	}
+
+	private static ExecutorService newIdlePool(int threads, String name) {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), r -> {
+					Thread thread = new Thread(r, name);
+					thread.setDaemon(true);
+					return thread;
+				});
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	/**
+	 * Waits for the end of the warm-up started by {@link #warmUp()} and throws
+	 * the error which stopped it, if any.
+	 */
+	private static void awaitWarmUp() throws Exception {
+		try {
+			warmUp().join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception)
+				throw (Exception) cause;
+			throw new Exception("JavaCV installer initialization failed: " + cause, cause);
+		}
 	}
 
 	public static String getInstallerVersion() {
@@ -269,7 +436,9 @@ public class JavaCV_Installer implements PlugIn {
 			if (new File(depsPath).exists()) {
 				
 				List<Path> javacppJarList = new ArrayList<>();
-				listFiles(Paths.get(depsPath), "javacpp-\\d.*\\.jar", false,  javacppJarList);
+				for (JarIndex.Jar jar : JarIndex.of(depsPath).getJars(depsPath, "javacpp-"))
+					if (jar.getArtifactId().equals("javacpp"))
+						javacppJarList.add(jar.getPath());
 				if (javacppJarList.size() == 1) {
 					installedJavaCVVersion = JavaCV_Installer_launcher.getJarVersion(javacppJarList.get(0).getFileName().toString());
 					IJLog.log("The intended version of JavaCV is " + installedJavaCVVersion);
@@ -305,9 +474,7 @@ public class JavaCV_Installer implements PlugIn {
 			return;
 		}
 
-		installedJavaCVVersion = nVer.getTextContent();
-
-		installedComponents.clear();
+		Set<String> components = new HashSet<>();
 		NodeList nCompList = doc.getElementsByTagName("component");
 		if (nCompList != null)
 			for (int i = 0; i < nCompList.getLength(); i++) {
@@ -316,11 +483,11 @@ public class JavaCV_Installer implements PlugIn {
 				if (nComp.getNodeType() == Node.ELEMENT_NODE) {
 
 					Element elem = (Element) nComp;
-					installedComponents.add(elem.getAttribute("name"));
+					components.add(elem.getAttribute("name"));
 				}
 			}
 
-		installedArtifacts.clear();
+		Set<String> artifacts = new HashSet<>();
 		NodeList nArtList = doc.getElementsByTagName("file");
 		if (nArtList != null && nArtList.getLength() > 0)
 			for (int i = 0; i < nArtList.getLength(); i++) {
@@ -329,9 +496,13 @@ public class JavaCV_Installer implements PlugIn {
 				if (nArt.getNodeType() == Node.ELEMENT_NODE) {
 
 					Element elem = (Element) nArt;
-					installedArtifacts.add(elem.getAttribute("path"));
+					artifacts.add(elem.getAttribute("path"));
 				}
 			}
+
+		installedComponents = Collections.unmodifiableSet(components);
+		installedArtifacts = Collections.unmodifiableSet(artifacts);
+		installedJavaCVVersion = nVer.getTextContent();
 	}
 
 	private static void writeInstallCfg() throws ParserConfigurationException, TransformerException {
@@ -388,7 +559,7 @@ public class JavaCV_Installer implements PlugIn {
 
 	static class DuplicateFilter implements DependencyFilter {
 
-		private Set<String> included;
+		private Set<ArtifactKey> included;
 
 		public DuplicateFilter() {
 			this.included = new HashSet<>();
@@ -396,11 +567,7 @@ public class JavaCV_Installer implements PlugIn {
 
 		@Override
 		public boolean accept(final DependencyNode node, final List<DependencyNode> parents) {
-			String artifactName = node.getArtifact().toString();
-			boolean newArtifact = !included.contains(artifactName);
-			if (newArtifact)
-				included.add(artifactName);
-			return newArtifact;
+			return included.add(new ArtifactKey(node.getArtifact()));
 		}
 
 		@Override
@@ -410,30 +577,117 @@ public class JavaCV_Installer implements PlugIn {
 
 	}
 
+	/**
+	 * Coordinates of an artifact (the same as in its string form) used as a hash
+	 * key without building the string.
+	 */
+	static final class ArtifactKey {
+		private final String groupId;
+		private final String artifactId;
+		private final String extension;
+		private final String classifier;
+		private final String version;
+		private final int hash;
+
+		public ArtifactKey(Artifact artifact) {
+			this.groupId = artifact.getGroupId();
+			this.artifactId = artifact.getArtifactId();
+			this.extension = artifact.getExtension();
+			this.classifier = artifact.getClassifier();
+			this.version = artifact.getVersion();
+			this.hash = Objects.hash(groupId, artifactId, extension, classifier, version);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof ArtifactKey))
+				return false;
+			ArtifactKey that = (ArtifactKey) obj;
+			return hash == that.hash && artifactId.equals(that.artifactId) && version.equals(that.version)
+					&& classifier.equals(that.classifier) && extension.equals(that.extension)
+					&& groupId.equals(that.groupId);
+		}
+	}
 
 	/**
-	 * Determines and return all available versions of an artifact.
+	 * Returns the number of nodes of a dependency graph, used to report the size
+	 * of a resolution in the debug mode.
+	 */
+	private static int countNodes(DependencyNode node, Set<DependencyNode> visited) {
+		if (!visited.add(node))
+			return 0;
+		int count = 1;
+		for (DependencyNode child : node.getChildren())
+			count += countNodes(child, visited);
+		return count;
+	}
+
+	/**
+	 * Determines and return all available versions of an artifact. The list is
+	 * cached on disk; a cache younger than "javacv.versions_ttl_hours" is used
+	 * without any network request, an older one is revalidated with a conditional
+	 * request for maven-metadata.xml.
 	 */
 
 	public static List<String> getAvailableVersions() throws Exception {
 
+		awaitWarmUp();
 		if (versions != null && versions.size() != 0)
 			return versions;
-		/// version request
-		Artifact artifact = new DefaultArtifact("org.bytedeco:javacv-platform:[0,)");
+		return loadAvailableVersions();
+	}
 
-		VersionRangeRequest rangeRequest = new VersionRangeRequest();
-		rangeRequest.setArtifact(artifact);
-		rangeRequest.setRepositories(repList);
+	private static List<String> loadAvailableVersions() throws Exception {
 
-		VersionRangeResult rangeResult = repSystem.resolveVersionRange(repSession, rangeRequest);
-		if (rangeResult != null) {
-			versions = rangeResult.getVersions().stream().map(Version::toString).collect(Collectors.toList());
-			newestVersion = rangeResult.getHighestVersion().toString();
-			return versions;
-		} else {
-			return null;
+		long ttl = (long) (Prefs.get(VERSIONS_TTL_KEY, DEFAULT_VERSIONS_TTL) * 3600000);
+		VersionsCache cache = new VersionsCache(new File(installerDirectory + "versions.xml"),
+				Booter.getMetadataURL("org.bytedeco", "javacv-platform"), ttl);
+		if (cache.load() && !cache.isFresh()) {
+			// the stale list is used now, a fresh one by the next calls
+			Thread thread = new Thread(() -> {
+				try {
+					cache.revalidate();
+					versions = cache.getVersions();
+					newestVersion = cache.getNewestVersion();
+				} catch (IOException e) {
+					if (IJ.debugMode)
+						IJLog.log("Cannot revalidate available versions: " + e);
+				}
+			}, "JavaCV versions revalidation");
+			thread.setDaemon(true);
+			thread.start();
+		} else if (cache.isEmpty()) {
+			try {
+				cache.revalidate();
+			} catch (Exception e) {
+				if (IJ.debugMode)
+					IJLog.log("Cannot revalidate available versions: " + e);
+				if (cache.isEmpty()) {
+					/// version request
+					Artifact artifact = new DefaultArtifact("org.bytedeco:javacv-platform:[0,)");
+
+					VersionRangeRequest rangeRequest = new VersionRangeRequest();
+					rangeRequest.setArtifact(artifact);
+					rangeRequest.setRepositories(repList);
+
+					VersionRangeResult rangeResult = repSystem.resolveVersionRange(repSession, rangeRequest);
+					if (rangeResult == null || rangeResult.getHighestVersion() == null)
+						return null;
+					cache.update(rangeResult.getVersions().stream().map(Version::toString).collect(Collectors.toList()),
+							rangeResult.getHighestVersion().toString());
+				}
+			}
 		}
+		versions = cache.getVersions();
+		newestVersion = cache.getNewestVersion();
+		return versions;
 
 	}
 
@@ -443,6 +697,7 @@ public class JavaCV_Installer implements PlugIn {
 
 	public static String getNewestJavaCVVersion() throws Exception {
 
+		awaitWarmUp();
 		if (newestVersion == null || newestVersion.isEmpty())
 			getAvailableVersions();
 		return newestVersion;
@@ -477,31 +732,43 @@ public class JavaCV_Installer implements PlugIn {
 		// append all interdependencies
 		if (showInfoMsg)
 			IJLog.log("Checking interdependencies...");
-		if (new VerParser(reqVersion).compareTo(new VerParser("1.4.4")) > 0) {
-			ArtifactDescriptorRequest dRequest = new ArtifactDescriptorRequest();
-			dRequest.setRepositories(Booter.newRepositories());
-
-			for (int i = 0; i < reqJavaCVComps.size(); i++) {
-				JavaCVComponent reqComp = reqJavaCVComps.get(i);
-				Artifact art = new DefaultArtifact(
-						"org.bytedeco:" + reqComp.getArtifactName() + ":" + reqComp.getVersion());
-				dRequest.setArtifact(art);
-				if (showInfoMsg)
-					IJLog.log(art.toString() + "...", true);
-				ArtifactDescriptorResult descriptorResult = repSystem.readArtifactDescriptor(repSession, dRequest);
-				for (Dependency dependency : descriptorResult.getDependencies()) {
-					String artId = dependency.getArtifact().getArtifactId();
-					int suff = artId.indexOf(PLATFORM_SUFFIX);
-					if (suff != -1) {
-						String compname = artId.replace(PLATFORM_SUFFIX, "");
+		if (VerParser.of(reqVersion).compareTo(VerParser.of("1.4.4")) > 0) {
+			// expand the closure level by level, the descriptors of a level are read
+			// concurrently, a single one is read inline
+			List<JavaCVComponent> frontier = new ArrayList<>(reqJavaCVComps);
+			while (!frontier.isEmpty()) {
+				List<Future<List<JavaCVComponent>>> descriptors = new ArrayList<>();
+				for (JavaCVComponent reqComp : frontier) {
+					if (showInfoMsg)
+						IJLog.log("org.bytedeco:" + reqComp.getArtifactName() + ":" + reqComp.getVersion() + "...",
+								true);
+					if (frontier.size() > 1)
+						descriptors.add(getDescriptorPool().submit(() -> getComponentDependencies(reqVersion, reqComp)));
+				}
+				List<JavaCVComponent> next = new ArrayList<>();
+				for (int i = 0; i < frontier.size(); i++) {
+					JavaCVComponent reqComp = frontier.get(i);
+					List<JavaCVComponent> depComps;
+					if (descriptors.isEmpty())
+						depComps = getComponentDependencies(reqVersion, reqComp);
+					else
+						try {
+							depComps = descriptors.get(i).get();
+						} catch (ExecutionException e) {
+							throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+						}
+					for (JavaCVComponent depComp : depComps) {
+						String compname = depComp.getName();
 						if (allComps.contains(compname) && !reqComps.contains(compname)) {
 							reqComps.add(compname);
-							reqJavaCVComps.add(new JavaCVComponent(artId, dependency.getArtifact().getVersion()));
+							reqJavaCVComps.add(depComp);
+							next.add(depComp);
 							if (showInfoMsg)
 								IJLog.log(reqComp.getName() + " depends on " + compname);
 						}
 					}
 				}
+				frontier = next;
 			}
 		}
 		if (showInfoMsg)
@@ -510,119 +777,145 @@ public class JavaCV_Installer implements PlugIn {
 		// set resolve filters
 		allComps.removeAll(reqComps);
 		Set<String> exclusions = new HashSet<>();
-		for (String comp : allComps)
+		// the same components are cut from the graph while it is collected, so their
+		// descriptors are never read; the filters below remain as a safety net
+		List<Exclusion> collectExclusions = new ArrayList<>();
+		for (String comp : allComps) {
 			exclusions.add("*:" + comp + "*:");
+			collectExclusions.add(new Exclusion("org.bytedeco", comp, "*", "*"));
+			collectExclusions.add(new Exclusion("org.bytedeco", comp + PLATFORM_SUFFIX, "*", "*"));
+		}
 		PatternExclusionsDependencyFilter exclusionFilter = new PatternExclusionsDependencyFilter(exclusions);
 		PatternInclusionsDependencyFilter inclusionFilter = new PatternInclusionsDependencyFilter("*bytedeco*:*:*:*");
 		// DependencyFilter classpathFlter = DependencyFilterUtils.classpathFilter(
 		// JavaScopes.COMPILE );
 		// DependencyFilter filter = DependencyFilterUtils.andFilter(classpathFlter,
 		// inclusionFilter, exclusionFilter, new DuplicateFilter());
-		DependencyFilter filter = DependencyFilterUtils.andFilter(inclusionFilter, exclusionFilter,
-				new DuplicateFilter());
+
+		// check if ffmpeg-gpl can be used instead ffmpeg: it is substituted in the
+		// collect request, so both variants are resolved in one graph
+		Dependency gplDependency = null;
+		if (reqComps.contains("ffmpeg") && VerParser.of(reqVersion).compareTo(VerParser.of("1.5.4")) > 0) {
+			gplDependency = getFFmpegGplDependency(reqVersion, reqJavaCVComps);
+			if (gplDependency != null)
+				collectExclusions.add(new Exclusion("org.bytedeco", "ffmpeg-platform", "*", "*"));
+		}
 		// set collect request
 		CollectRequest collectRequest = new CollectRequest();
 		Artifact artifact = new DefaultArtifact("org.bytedeco:javacv-platform:" + reqVersion);
-		collectRequest.setRoot(new Dependency(artifact, "compile"));
+		collectRequest.setRoot(new Dependency(artifact, "compile", false, collectExclusions));
+		if (gplDependency != null)
+			collectRequest.addDependency(gplDependency);
 		collectRequest.setRepositories(repList);
-		DependencyRequest dependencyRequest = new DependencyRequest(collectRequest, filter);
 		// resolve!
 		if (showInfoMsg)
 			IJLog.log("Resolving dependencies...");
-		DependencyResult depRes = repSystem.resolveDependencies(repSession, dependencyRequest);
-		if (showInfoMsg && depRes != null)
-			IJLog.log("Done");
-		List<ArtifactResult> gplList;
-		List<ArtifactResult> depList;
-		depList = new ArrayList<>(new HashSet<>(depRes.getArtifactResults()));
-
-		// check if ffmpeg-gpl can be used instead ffmpeg
-		DependencyResult depRes_gpl = null;
-		if (reqComps.contains("ffmpeg") && new VerParser(reqVersion).compareTo(new VerParser("1.5.4")) > 0) {
+		DependencyResult depRes;
+		try {
+			depRes = offlineFirst("dependencies " + reqVersion + " " + reqComps + (gplDependency != null ? " gpl" : ""),
+					session -> repSystem.resolveDependencies(session, new DependencyRequest(collectRequest,
+							DependencyFilterUtils.andFilter(inclusionFilter, exclusionFilter, new DuplicateFilter()))));
+		} catch (DependencyResolutionException e) {
+			if (gplDependency == null)
+				throw e;
+			// e.g. no gpl natives for this platform, fall back to plain ffmpeg
 			if (showInfoMsg)
-				IJLog.log("Resolving optional ffmpeg-gpl dependencies...");
-			String ffmpegVersion = "";
-			for (ArtifactResult artifactResult : depRes.getArtifactResults()) {
-				if (artifactResult.getArtifact().getArtifactId().indexOf("ffmpeg-platform") != -1) {
-					ffmpegVersion = artifactResult.getArtifact().getVersion();
-					break;
-				}
-			}
-			if (!ffmpegVersion.isEmpty()) {
-				artifact = new DefaultArtifact("org.bytedeco:ffmpeg-platform-gpl:" + ffmpegVersion);
-				collectRequest.setRoot(new Dependency(artifact, null));
-				collectRequest.setRepositories(repList);
-				// DependencyFilter gplFilter = DependencyFilterUtils.andFilter(classpathFlter,
-				// inclusionFilter, new DuplicateFilter());
-				DependencyFilter gplFilter = DependencyFilterUtils.andFilter(inclusionFilter, new DuplicateFilter());
-				dependencyRequest = new DependencyRequest(collectRequest, gplFilter);
-				depRes_gpl = repSystem.resolveDependencies(repSession, dependencyRequest);
-				if (!depRes_gpl.getArtifactResults().isEmpty()) {
-					if (showInfoMsg)
-						IJLog.log("Optional ffmpeg-gpl dependencies are resolved");
-					Predicate<ArtifactResult> ffmpegPlatformGpl = x -> x.getArtifact().getArtifactId()
-							.equals("ffmpeg-platform-gpl");
-					Predicate<ArtifactResult> natLibGpl = x -> x.getArtifact().getClassifier()
-							.equals(platformSpecifier + "-gpl");
-					if (depRes_gpl.getArtifactResults().stream().anyMatch(ffmpegPlatformGpl)
-							&& depRes_gpl.getArtifactResults().stream().anyMatch(natLibGpl)) {
-						List<ArtifactResult> removesList = new ArrayList<>();
-						for (ArtifactResult artifactResult : depList) {
-							if (artifactResult.getArtifact().getArtifactId().equals("ffmpeg-platform")
-									|| (artifactResult.getArtifact().getArtifactId().equals("ffmpeg") && artifactResult
-											.getArtifact().getClassifier().equals(platformSpecifier))) {
-								removesList.add(artifactResult);
-							}
-						}
-						depList.removeAll(removesList);
-					}
-				} else if (showInfoMsg)
-					IJLog.log("No optional gpl dependencies resolved");
-			} else if (showInfoMsg)
-				IJLog.log("ffmpeg version is not found");
+				IJLog.log("No optional gpl dependencies resolved");
+			collectExclusions.remove(collectExclusions.size() - 1);
+			collectRequest.setRoot(new Dependency(artifact, "compile", false, collectExclusions));
+			collectRequest.setDependencies(new ArrayList<>());
+			depRes = offlineFirst("dependencies " + reqVersion + " " + reqComps,
+					session -> repSystem.resolveDependencies(session, new DependencyRequest(collectRequest,
+							DependencyFilterUtils.andFilter(inclusionFilter, exclusionFilter, new DuplicateFilter()))));
 		}
-
-		if (depRes_gpl != null) {
-			gplList = new ArrayList<>(new HashSet<>(depRes_gpl.getArtifactResults()));
-			depList.addAll(gplList);
-		}
-		// check and remove duplicates and version conflicts
+		if (showInfoMsg && depRes != null)
+			IJLog.log("Done");
+		if (IJ.debugMode)
+			IJLog.log("Dependency graph (" + (leanResolution ? "lean" : "verbose") + "): "
+					+ countNodes(depRes.getRoot(), Collections.newSetFromMap(new IdentityHashMap<>())) + " nodes, "
+					+ depRes.getArtifactResults().size() + " artifacts");
+		List<ArtifactResult> depList = new ArrayList<>(new HashSet<>(depRes.getArtifactResults()));
+
+		// check and remove duplicates and version conflicts, versions are compared
+		// by the javacv part first and then by the component part
 		Map<String, ArtifactResult> mArtResults = new HashMap<>();
+		Map<String, VerParser[]> mArtVersions = new HashMap<>();
 		for (ArtifactResult artifactResult : depList) {
 			Artifact art = artifactResult.getArtifact();
 			String artName = art.getArtifactId() + (!art.getClassifier().isEmpty() ? "-" + art.getClassifier() : "");
-			if (!mArtResults.containsKey(artName))
-				mArtResults.put(artName, artifactResult);
-			else {
-				String artVer = art.getVersion();
-				String artJavacvVer = "";
-				String artCompVer = "";
-				int dash = artVer.indexOf('-');
-				if (dash > -1) {
-					artJavacvVer = artVer.substring(dash + 1);
-					artCompVer = artVer.substring(0, dash);
-				} else
-					artJavacvVer = artVer;
-				Artifact selArt = mArtResults.get(artName).getArtifact();
-				String selArtVer = selArt.getVersion();
-				String selArtJavacvVer = "";
-				String selArtCompVer = "";
-				dash = selArtVer.indexOf('-');
-				if (dash > -1) {
-					selArtJavacvVer = selArtVer.substring(dash + 1);
-					selArtCompVer = selArtVer.substring(0, dash);
-				} else
-					selArtJavacvVer = selArtVer;
-				int verCompare = new VerParser(artJavacvVer).compareTo(new VerParser(selArtJavacvVer));
-				if (verCompare > 0 || (verCompare == 0 && !selArtCompVer.isEmpty() && !artCompVer.isEmpty()
-						&& new VerParser(artCompVer).compareTo(new VerParser(selArtCompVer)) > 0))
-					mArtResults.put(artName, artifactResult);
-
+			String artVer = art.getVersion();
+			int dash = artVer.indexOf('-');
+			VerParser[] artKey = dash > -1
+					? new VerParser[] { VerParser.of(artVer.substring(dash + 1)), VerParser.of(artVer.substring(0, dash)) }
+					: new VerParser[] { VerParser.of(artVer), null };
+			VerParser[] selKey = mArtVersions.get(artName);
+			if (selKey != null) {
+				int verCompare = artKey[0].compareTo(selKey[0]);
+				if (verCompare < 0 || (verCompare == 0
+						&& (artKey[1] == null || selKey[1] == null || artKey[1].compareTo(selKey[1]) <= 0)))
+					continue;
 			}
+			mArtResults.put(artName, artifactResult);
+			mArtVersions.put(artName, artKey);
 		}
 		return new ArrayList<>(mArtResults.values());
 	}
 
+	/**
+	 * Returns the ffmpeg-platform-gpl dependency matching the requested ffmpeg
+	 * component, or null if this artifact is not available. Its descriptor is
+	 * read through the components cache, so the check costs a request only once.
+	 */
+	private static Dependency getFFmpegGplDependency(String javacvVersion, List<JavaCVComponent> reqJavaCVComps) {
+		String ffmpegVersion = "";
+		for (JavaCVComponent comp : reqJavaCVComps)
+			if (comp.getName().equals("ffmpeg")) {
+				ffmpegVersion = comp.getVersion();
+				break;
+			}
+		if (ffmpegVersion.isEmpty()) {
+			if (showInfoMsg)
+				IJLog.log("ffmpeg version is not found");
+			return null;
+		}
+		try {
+			getComponentDependencies(javacvVersion, new JavaCVComponent("ffmpeg-platform-gpl", ffmpegVersion));
+		} catch (Exception e) {
+			if (showInfoMsg)
+				IJLog.log("No optional gpl dependencies resolved");
+			return null;
+		}
+		if (showInfoMsg)
+			IJLog.log("Optional ffmpeg-gpl dependencies will be used");
+		return new Dependency(new DefaultArtifact("org.bytedeco:ffmpeg-platform-gpl:" + ffmpegVersion), "compile");
+	}
+
+	/**
+	 * Returns the components (platform artifacts) which the given component of a
+	 * JavaCV version depends on. The descriptor is read only once, a complete
+	 * result is kept in the components cache.
+	 */
+	private static List<JavaCVComponent> getComponentDependencies(String javacvVersion, JavaCVComponent comp)
+			throws Exception {
+		List<JavaCVComponent> result = componentsCache.getDependencies(javacvVersion, comp);
+		if (result != null)
+			return result;
+		ArtifactDescriptorRequest dRequest = new ArtifactDescriptorRequest();
+		dRequest.setRepositories(repList);
+		dRequest.setArtifact(new DefaultArtifact("org.bytedeco:" + comp.getArtifactName() + ":" + comp.getVersion()));
+		ArtifactDescriptorResult descriptorResult = offlineFirst("descriptor " + dRequest.getArtifact(),
+				session -> repSystem.readArtifactDescriptor(session, dRequest));
+		result = new ArrayList<>();
+		for (Dependency dependency : descriptorResult.getDependencies()) {
+			String artId = dependency.getArtifact().getArtifactId();
+			if (artId.indexOf(PLATFORM_SUFFIX) != -1)
+				result.add(new JavaCVComponent(artId, dependency.getArtifact().getVersion()));
+		}
+		if (descriptorResult.getExceptions().isEmpty() && !result.isEmpty())
+			componentsCache.putDependencies(javacvVersion, comp, result);
+		return result;
+	}
+
 	static class JavaCVDependency {
 		private String depFilename;
 		private String depDirectory;
@@ -651,12 +944,33 @@ public class JavaCV_Installer implements PlugIn {
 		 */
 		public boolean install() throws Exception {
 
+			Path dstPath = getStagingPath();
+			if (dstPath == null)
+				return false;
+			StagingCopier.copy(Paths.get(srcPath), dstPath);
+
+			return true;
+		}
+
+		/**
+		 * Returns true if the installed file has the same content as the source.
+		 */
+		public boolean isUpToDate() throws IOException {
+			return StagingCopier.isIdentical(Paths.get(srcPath), Paths.get(depDirectory + depFilename));
+		}
+
+		/**
+		 * Checks the source and the update folder and returns the path where the
+		 * dependency is staged, or null if it cannot be installed.
+		 */
+		public Path getStagingPath() {
+
 			if (!(new File(srcPath)).exists()) {
 				IJLog.log("Source file not found " + srcPath);
 				if (showInfoMsg)
 					IJ.showMessage(DIALOG_TITLE, "Source file not found\n" + srcPath);
 				Prefs.set("javacv.install_result", "source file not found");
-				return false;
+				return null;
 			}
 
 			String dstDirectory = updateDirectory + depDirectory.substring(imagejDirectory.length());
@@ -667,19 +981,16 @@ public class JavaCV_Installer implements PlugIn {
 				if (showInfoMsg)
 					IJ.showMessage(DIALOG_TITLE, "Can't create folder\n" + dstDirectory);
 				Prefs.set("javacv.install_result", "cannot create update folder");
-				return false;
+				return null;
 			}
 			if (!directory.canWrite()) {
 				IJLog.log("No permissions to write to folder " + dstDirectory);
 				if (showInfoMsg)
 					IJ.showMessage(DIALOG_TITLE, "No permissions to write to folder\n" + depDirectory);
 				Prefs.set("javacv.install_result", "cannot write update folder");
-				return false;
+				return null;
 			}
-			String dstPath = dstDirectory + depFilename;
-			Files.copy(Paths.get(srcPath), Paths.get(dstPath), StandardCopyOption.REPLACE_EXISTING);
-
-			return true;
+			return Paths.get(dstDirectory + depFilename);
 		}
 
 		/**
@@ -881,7 +1192,10 @@ public class JavaCV_Installer implements PlugIn {
 
 	public static List<JavaCVComponent> getComponentsByVer(String version) throws Exception {
 
+		awaitWarmUp();
 		List<JavaCVComponent> result = compsByVer.get(version);
+		if (result == null && (result = componentsCache.getComponents(version)) != null)
+			compsByVer.put(version, result);
 		if (result == null) {
 			if (versions == null || versions.isEmpty()) {
 				IJLog.log("Information about JavaCV versions is not available");
@@ -896,7 +1210,8 @@ public class JavaCV_Installer implements PlugIn {
 			descriptorRequest.setArtifact(artifact);
 			descriptorRequest.setRepositories(repList);
 
-			ArtifactDescriptorResult descriptorResult = repSystem.readArtifactDescriptor(repSession, descriptorRequest);
+			ArtifactDescriptorResult descriptorResult = offlineFirst("descriptor " + artifact,
+					session -> repSystem.readArtifactDescriptor(session, descriptorRequest));
 			for (Dependency dependency : descriptorResult.getDependencies()) {
 				String scope = dependency.getScope();
 				String aId = dependency.getArtifact().getArtifactId();
@@ -907,7 +1222,11 @@ public class JavaCV_Installer implements PlugIn {
 					result.add(new JavaCVComponent(aId, dependency.getArtifact().getVersion()));
 				}
 			}
-			compsByVer.put(version, result);
+			// an incomplete descriptor is read again next time
+			if (descriptorResult.getExceptions().isEmpty() && !result.isEmpty()) {
+				compsByVer.put(version, result);
+				componentsCache.putComponents(version, result);
+			}
 
 		}
 		return result;
@@ -921,9 +1240,9 @@ public class JavaCV_Installer implements PlugIn {
 	private static boolean doesInstalledVersionMeet(String version, boolean treatAsMinVer) {
 		if (isInstalledVersionValid()) {
 			if (treatAsMinVer)
-				return new VerParser(version).compareTo(new VerParser(installedJavaCVVersion)) <= 0;
+				return VerParser.of(version).compareTo(VerParser.of(installedJavaCVVersion)) <= 0;
 			else
-				return new VerParser(version).compareTo(new VerParser(installedJavaCVVersion)) == 0;
+				return VerParser.of(version).compareTo(VerParser.of(installedJavaCVVersion)) == 0;
 		}
 		return false;
 	}
@@ -943,10 +1262,10 @@ public class JavaCV_Installer implements PlugIn {
 			return true;
 		}
 		String ver = JavaCV_Installer_launcher.getJarVersion(name);
-		VerParser chkVer = new VerParser(ver);
+		VerParser chkVer = VerParser.of(ver);
 		boolean conflict = ((!isInstalledVersionValid() || currentVersion == null || currentVersion.isEmpty()
-				|| chkVer.compareTo(new VerParser(currentVersion)) != 0)
-				&& chkVer.compareTo(new VerParser(reqVersion)) != 0);
+				|| chkVer.compareTo(VerParser.of(currentVersion)) != 0)
+				&& chkVer.compareTo(VerParser.of(reqVersion)) != 0);
 		return conflict;
 	}
 
@@ -987,21 +1306,163 @@ public class JavaCV_Installer implements PlugIn {
 	 * installed.
 	 */
 	public static boolean checkMinJavaCV(String reqCompNames, String minVersion) {
+		String checkKey = getCheckKey(reqCompNames, minVersion, true);
+		if (isCheckPassed(checkKey))
+			return true;
+		try {
+			awaitWarmUp();
+		} catch (Exception e) {
+			IJLog.log(e.getMessage());
+			Prefs.set("javacv.install_result", "installer is not initialized");
+			return false;
+		}
+		boolean passed;
 		if (isInstalledVersionValid()
-				&& new VerParser(minVersion).compareTo(new VerParser(installedJavaCVVersion)) <= 0) {
+				&& VerParser.of(minVersion).compareTo(VerParser.of(installedJavaCVVersion)) <= 0) {
 			if (showInfoMsg)
 				IJLog.log("Installed JavaCV version is acceptable");
-			return checkJavaCV(reqCompNames);
+			passed = checkJavaCV(reqCompNames);
+		} else
+			passed = checkJavaCV(reqCompNames, minVersion);
+		if (passed)
+			setCheckPassed(checkKey);
+		return passed;
+	}
+
+	/**
+	 * Returns the key of a check request: the version, whether it is the minimal
+	 * one and the sorted component names.
+	 */
+	private static String getCheckKey(String reqCompNames, String reqVersion, boolean minVersion) {
+		String comps = reqCompNames == null ? ""
+				: Arrays.stream(reqCompNames.trim().split("[ ]+")).distinct().sorted()
+						.collect(Collectors.joining(" "));
+		return (minVersion ? ">=" : "") + (reqVersion == null ? "" : reqVersion) + ":" + comps;
+	}
+
+	/**
+	 * Returns the state which invalidates the results of previous checks when
+	 * changed: modification times of the install config and of the jar
+	 * directories.
+	 */
+	private static String getInstallationStamp() {
+		return new File(installerDirectory + "installcfg.xml").lastModified() + ":"
+				+ new File(depsPath).lastModified() + ":" + new File(natLibsPath).lastModified();
+	}
+
+	/**
+	 * Returns true if the same check already passed in this session and nothing
+	 * was installed since then. Checks with dialogs or macro options are never
+	 * reused.
+	 */
+	private static boolean isCheckPassed(String checkKey) {
+		if (restartRequired || Macro.getOptions() != null)
+			return false;
+		String stamp = passedChecks.get(checkKey);
+		if (stamp == null)
+			return false;
+		if (!stamp.equals(getInstallationStamp())) {
+			passedChecks.clear();
+			return false;
+		}
+		Prefs.set("javacv.install_result", "success");
+		return true;
+	}
+
+	private static void setCheckPassed(String checkKey) {
+		if (!restartRequired && Macro.getOptions() == null)
+			passedChecks.put(checkKey, getInstallationStamp());
+	}
+
+	/**
+	 * Checks and installs the required components like
+	 * {@link #checkJavaCV(String, String)} and returns a class loader from which
+	 * they can be used in the current session. The files of the resolution lock
+	 * which are staged in the update folder are read from there, and installed on
+	 * the next start as usual, so a successful activation does not require a
+	 * restart. If nothing is staged, the ImageJ class loader is returned. Returns
+	 * null if the check failed.
+	 */
+	public static synchronized ClassLoader activateJavaCV(String reqCompNames, String reqVersion) {
+		String key = reqVersion + ":" + (reqCompNames == null ? ""
+				: Arrays.stream(reqCompNames.trim().split("[ ]+")).sorted().collect(Collectors.joining(" ")));
+		ClassLoader loader = activatedLoaders.get(key);
+		if (loader != null)
+			return loader;
+		if (!checkAndInstall(reqCompNames, reqVersion, false, false, true))
+			return null;
+		// the same key as the lock written by the check
+		List<String> reqComps = new ArrayList<>();
+		try {
+			List<String> available = getComponentsByVer(installedJavaCVVersion).stream()
+					.map(JavaCVComponent::getName).collect(Collectors.toList());
+			if (reqCompNames != null)
+				for (String comp : reqCompNames.split("[ ]+"))
+					if (available.contains(comp) && !reqComps.contains(comp))
+						reqComps.add(comp);
+		} catch (Exception e) {
+			IJLog.log(e.toString());
+			return null;
+		}
+		ResolutionLock lock = new ResolutionLock(installerDirectory, installedJavaCVVersion, platformSpecifier,
+				reqComps);
+		if (!lock.load()) {
+			IJLog.log("JavaCV cannot be activated, the installed files are not known");
+			return null;
+		}
+		// the files staged in the update folder are read from there until the restart
+		List<URL> urls = new ArrayList<>();
+		boolean staged = false;
+		try {
+			for (Path path : lock.getPaths()) {
+				String installed = path.toString();
+				Path stagingPath = installed.startsWith(imagejDirectory)
+						? Paths.get(updateDirectory + installed.substring(imagejDirectory.length()))
+						: null;
+				if (stagingPath != null && Files.isRegularFile(stagingPath)) {
+					staged = true;
+					path = stagingPath;
+				}
+				urls.add(path.toUri().toURL());
+			}
+		} catch (MalformedURLException e) {
+			IJLog.log(e.toString());
+			return null;
 		}
-		return checkJavaCV(reqCompNames, minVersion);
+		if (!staged && !restartRequired)
+			return IJ.getClassLoader();
+		loader = new JavaCV_Installer_launcher.IsolatedClassLoader(urls.toArray(new URL[0]), IJ.getClassLoader(),
+				"org.bytedeco.");
+		activatedLoaders.put(key, loader);
+		return loader;
 	}
 
 	/**
 	 * Returns true if video import plugin can run. Checks if all necessary
-	 * dependencies are installed, prompts to install if missing.
+	 * dependencies are installed, prompts to install if missing. With the
+	 * isolated bootstrap the resolver is not on the ImageJ class path, and other
+	 * plugins must call {@link JavaCV_Installer_launcher#checkJavaCV(String, String, boolean, boolean)}
+	 * instead.
 	 */
 	public static boolean checkJavaCV(String reqCompNames, String reqVersion, boolean showOptDlg,
 			boolean forceReinstall) {
+		if (showOptDlg || forceReinstall)
+			return checkAndInstall(reqCompNames, reqVersion, showOptDlg, forceReinstall, false);
+		String checkKey = getCheckKey(reqCompNames, reqVersion, false);
+		if (isCheckPassed(checkKey))
+			return true;
+		boolean passed = checkAndInstall(reqCompNames, reqVersion, false, false, false);
+		if (passed)
+			setCheckPassed(checkKey);
+		return passed;
+	}
+
+	/**
+	 * Checks and installs the required components. If activated, the staged files
+	 * are used in the current session, so no restart is required.
+	 */
+	private static boolean checkAndInstall(String reqCompNames, String reqVersion, boolean showOptDlg,
+			boolean forceReinstall, boolean activate) {
 
 		String messageTitle = "JavaCV dependency check";
 		String autoInstallMsg = "Not all required JavaCV dependencies are installed.\nAuto-install?";
@@ -1009,8 +1470,15 @@ public class JavaCV_Installer implements PlugIn {
 		String versionChoiceLabel = "Version";
 		boolean macroConfirmed = false;
 
-		if (restartRequired) {
-			IJ.showMessage(messageTitle, "ImageJ must be restarted after previuos install operation!");
+		try {
+			awaitWarmUp();
+		} catch (Exception e) {
+			IJLog.log(e.getMessage());
+			Prefs.set("javacv.install_result", "installer is not initialized");
+			return false;
+		}
+		if (restartRequired && !activate) {
+			showMessage(messageTitle, "ImageJ must be restarted after previuos install operation!");
 			Prefs.set("javacv.install_result", "restart required");
 			return false;
 		}
@@ -1252,9 +1720,38 @@ public class JavaCV_Installer implements PlugIn {
 			IJLog.log("Requested components: " + reqComps);
 		}
 
+		// a satisfied installation which matches the lock does not need any resolution
+		ResolutionLock lock = new ResolutionLock(installerDirectory, reqVersion, platformSpecifier, reqComps);
+		if (!forceReinstall && reqVersion.equals(installedJavaCVVersion) && installedComponents.containsAll(reqComps)
+				&& lock.load() && lock.isSatisfied()) {
+			if (showInfoMsg)
+				IJLog.log("The installed files match the resolution lock");
+			// jars of other versions are removed all the same, the scan reads the jar index only
+			if (removeConflicts(reqVersion, reqComps, new HashSet<>(lock.getPaths()), new HashSet<>()) && !activate) {
+				showMessage("JavaCV installation", "Please restart ImageJ now");
+				IJLog.log("ImageJ restart is required to remove the conflicting files!");
+				IJLog.log("---------------------------------------------");
+				restartRequired = true;
+				Prefs.set("javacv.install_result", "restart required");
+				return true;
+			}
+			Prefs.set("javacv.install_result", "success");
+			return true;
+		}
+
+		// a version installed before is switched to from its profile, without resolution
+		if (!forceReinstall && isInstalledVersionValid() && !reqVersion.equalsIgnoreCase(installedJavaCVVersion)) {
+			VersionProfile profile = new VersionProfile(installerDirectory, imagejDirectory, reqVersion);
+			if (profile.load() && profile.covers(reqComps))
+				return switchToProfile(profile, reqComps, messageTitle, macroConfirmed, activate);
+		}
+
 		List<ArtifactResult> artifactResults = new ArrayList<>();
+		List<String> resolvedComps = new ArrayList<>(reqComps);
+		List<String[]> lockEntries = new ArrayList<>();
 		try {
-			artifactResults = resolveDependencies(reqVersion, reqComps);
+			// the lock is keyed on the requested components, not on their closure
+			artifactResults = resolveDependencies(reqVersion, resolvedComps);
 			if (artifactResults == null) {
 				IJLog.log("Dependencies are not resolved for some reason. The presence of the required files could not be verified.");
 				Prefs.set("javacv.install_result", "dependencies are not resolved");
@@ -1273,9 +1770,11 @@ public class JavaCV_Installer implements PlugIn {
 			String fileName = artifact.getPath().getFileName().toString();
 			String dstDir = artifact.getClassifier().isEmpty() ? depsPath : natLibsPath;
 			dependencies.add(new JavaCVDependency(fileName, dstDir, srcPath));
+			lockEntries.add(new String[] { artifact.toString(), dstDir + fileName, srcPath });
 			if (showInfoMsg)
 				IJLog.log(artifact.toString() + " resolved to " + srcPath);
 		}
+		localRepoCache.touch(artifactResults.stream().map(x -> x.getArtifact().getPath()).collect(Collectors.toList()));
 		if (showInfoMsg)
 			IJLog.log(" ");
 
@@ -1295,12 +1794,38 @@ public class JavaCV_Installer implements PlugIn {
 			}
 
 			IJLog.log(msg);
+			storeInstalledProfile();
 			IJLog.log("Marking files for deletion on ImageJ restart...");
 
+			// the installed files are matched with the new ones by their coordinates
+			// (from the locks of the installed version), only a file of the same
+			// artifact and version is compared by content and kept if identical
+			Map<String, Artifact> newArtifacts = new HashMap<>();
+			for (ArtifactResult artifactResult : artifactResults)
+				newArtifacts.put(getArtifactKey(artifactResult.getArtifact()), artifactResult.getArtifact());
+			Map<String, String> installedCoords = ResolutionLock.getCoords(installerDirectory, installedJavaCVVersion,
+					platformSpecifier);
+			int keptCount = 0;
 			for (String art : installedArtifacts) {
 
-				IJLog.log(art);
 				Path artPath = Paths.get(art);
+				String coords = installedCoords.get(art);
+				try {
+					Artifact newArtifact = null;
+					if (coords != null) {
+						Artifact oldArtifact = new DefaultArtifact(coords);
+						newArtifact = newArtifacts.get(getArtifactKey(oldArtifact));
+						if (newArtifact != null && !newArtifact.getVersion().equals(oldArtifact.getVersion()))
+							newArtifact = null;
+					}
+					if (newArtifact != null && StagingCopier.isIdentical(newArtifact.getPath(), artPath)) {
+						keptCount++;
+						continue;
+					}
+				} catch (IOException | IllegalArgumentException e) {
+					// removed if it cannot be compared
+				}
+				IJLog.log(art);
 				try {
 					if (!new JavaCVDependency(artPath.getFileName().toString(),
 							artPath.getParent().toString() + File.separator, null).remove()) {
@@ -1321,8 +1846,10 @@ public class JavaCV_Installer implements PlugIn {
 				}
 
 			}
-			installedArtifacts.clear();
-			installedComponents.clear();
+			if (keptCount > 0)
+				IJLog.log(keptCount + " unchanged files are kept");
+			installedArtifacts = Collections.emptySet();
+			installedComponents = Collections.emptySet();
 			IJLog.log(" ");
 			IJLog.log("Installing selected version...");
 			IJLog.log("=======================================");
@@ -1333,8 +1860,11 @@ public class JavaCV_Installer implements PlugIn {
 		Set<Path> newInstalledPaths = new HashSet<>(
 				newInstalled.stream().map(x -> Paths.get(x)).collect(Collectors.toList()));
 		boolean installEvent = false;
+		StagingCopier copier = new StagingCopier();
 		for (JavaCVDependency dep : dependencies) {
-			if (forceReinstall || !dep.isInstalled()) {
+			// a file of the previous version with the same name but other content is replaced
+			if (forceReinstall || !dep.isInstalled()
+					|| removedArtifacts.contains(Paths.get(dep.getDirectory() + dep.getName()))) {
 				if (!forceReinstall && !installConfirmed) {
 					if (!(installConfirmed = showInfoMsg || macroConfirmed)) {
 
@@ -1348,24 +1878,131 @@ public class JavaCV_Installer implements PlugIn {
 					}
 				}
 
+				Path stagingPath = dep.getStagingPath();
+				if (stagingPath == null)
+					return false;
+				Path srcPath = Paths.get(dep.srcPath);
 				try {
-					if (dep.install()) {
-						installEvent = true;
-						IJLog.log(dep.getName() + " will be installed to " + dep.getDirectory());
-					} else {
-
-						return false;
-					}
-				} catch (Exception e) {
-					IJLog.log("Install error: " + e.getMessage());
-					e.printStackTrace();
-					installed = false;
-					Prefs.set("javacv.install_result", "cannot install");
+					// a staged file may also be a deletion mark, it is replaced unless identical
+					if (Files.exists(stagingPath)) {
+						if (!StagingCopier.isIdentical(srcPath, stagingPath))
+							copier.add(srcPath, stagingPath);
+					} else if (dep.isUpToDate()) {
+						if (showInfoMsg)
+							IJLog.log(dep.getName() + " is up to date");
+						continue;
+					} else
+						copier.add(srcPath, stagingPath);
+				} catch (IOException e) {
+					copier.add(srcPath, stagingPath);
 				}
+				installEvent = true;
+				IJLog.log(dep.getName() + " will be installed to " + dep.getDirectory());
 			}
 		}
+		try {
+			long bytes = copier.run();
+			if (!copier.isEmpty())
+				IJLog.log(bytes / 1024 + " KB copied to the update folder"
+						+ (Prefs.get(StagingCopier.LINK_KEY, false) ? ", other files linked" : ""));
+		} catch (Exception e) {
+			IJLog.log("Install error: " + e.getMessage());
+			e.printStackTrace();
+			installed = false;
+			Prefs.set("javacv.install_result", "cannot install");
+		}
 
 		//// Try to cleanup conflicts and previous incorrect installations
+		boolean conflictsFound = removeConflicts(reqVersion, resolvedComps, newInstalledPaths, removedArtifacts);
+
+		installConfirmed = installConfirmed || conflictsFound || installEvent;
+
+		if ((installConfirmed || forceReinstall) && activate)
+			IJLog.log("JavaCV is activated for this session, the files are installed on the next start");
+		else if (installConfirmed || forceReinstall) {
+			showMessage("JavaCV installation", "Please restart ImageJ now");
+			IJLog.log("ImageJ restart is required after javacv installation!");
+			IJLog.log("---------------------------------------------");
+			restartRequired = true;
+		} else
+			restartRequired = false;
+
+		if (installed) {
+			Set<String> components = new HashSet<>(installedComponents);
+			components.addAll(resolvedComps);
+			Set<String> artifacts = new HashSet<>(installedArtifacts);
+			artifacts.addAll(newInstalled);
+			installedComponents = Collections.unmodifiableSet(components);
+			installedArtifacts = Collections.unmodifiableSet(artifacts);
+			installedJavaCVVersion = reqVersion;
+			try {
+				writeInstallCfg();
+				Prefs.set("javacv.install_result", restartRequired ? "restart required" : "success");
+			} catch (ParserConfigurationException | TransformerException e) {
+				e.printStackTrace();
+			}
+			try {
+				// nothing of a lock which was loaded but not satisfied is kept
+				lock = new ResolutionLock(installerDirectory, reqVersion, platformSpecifier, reqComps);
+				for (String[] entry : lockEntries)
+					lock.add(entry[0], Paths.get(entry[1]), Paths.get(entry[2]));
+				lock.save();
+			} catch (IOException e) {
+				IJLog.log("Cannot write the resolution lock: " + e);
+			}
+			VersionProfile profile = new VersionProfile(installerDirectory, imagejDirectory, reqVersion);
+			profile.load();
+			profile.setComponents(installedComponents);
+			for (String[] entry : lockEntries)
+				profile.add(entry[1], Paths.get(entry[2]), entry[0]);
+			profile.save();
+			VersionProfile.prune(installerDirectory, reqVersion);
+			enforceLocalRepoBudget();
+
+		}
+
+		return installed;
+	}
+
+	/**
+	 * Keeps the local repository within its budget, the sources of the installed
+	 * files are never removed.
+	 */
+	private static void enforceLocalRepoBudget() {
+		Set<String> protectedNames = new HashSet<>();
+		for (String art : installedArtifacts)
+			protectedNames.add(Paths.get(art).getFileName().toString());
+		long freed = localRepoCache.enforce(protectedNames);
+		if (freed > 0)
+			IJLog.log(freed / (1024 * 1024) + " MB of unused artifacts removed from the local repository");
+	}
+
+	/**
+	 * Stores the profile of the installed version from the installed files, if
+	 * it has no profile yet (e.g. installed by an older installer).
+	 */
+	private static void storeInstalledProfile() {
+		VersionProfile profile = new VersionProfile(installerDirectory, imagejDirectory, installedJavaCVVersion);
+		if (profile.load())
+			return;
+		profile.setComponents(installedComponents);
+		Map<String, String> coords = ResolutionLock.getCoords(installerDirectory, installedJavaCVVersion,
+				platformSpecifier);
+		for (String art : installedArtifacts)
+			profile.add(art, Paths.get(art), coords.get(art));
+		profile.save();
+	}
+
+	private static String getArtifactKey(Artifact artifact) {
+		return artifact.getGroupId() + ":" + artifact.getArtifactId() + ":" + artifact.getClassifier();
+	}
+
+	/**
+	 * Marks the jars of the checked components which conflict with the required
+	 * version for removal, returns true if any was found.
+	 */
+	private static boolean removeConflicts(String reqVersion, List<String> reqComps, Set<Path> installedPaths,
+			Set<Path> removedArtifacts) {
 		boolean conflictsFound = false;
 		try {
 			if (showInfoMsg) {
@@ -1395,8 +2032,8 @@ public class JavaCV_Installer implements PlugIn {
 						String checkComp = checkJavaCVComp.getName();
 						if (checkComponetsSet.contains(checkComp)) {
 							String checkVer = checkJavaCVComp.getVersion();
-							List<Path> jarList = new ArrayList<>();
-							listFiles(Paths.get(checkDir), checkComp + ".*\\.jar", true,  jarList);
+							List<Path> jarList = JarIndex.of(checkDir).getJars(checkComp).stream()
+									.map(JarIndex.Jar::getPath).collect(Collectors.toList());
 	//						IJLog.log("Files check for  " + checkComp + "*.jar LIST SIZE: "  + jarList.size());
 	//						DirectoryStream<Path> dirStream = Files.newDirectoryStream(Paths.get(checkDir),
 	//								checkComp + "*.jar");
@@ -1404,7 +2041,7 @@ public class JavaCV_Installer implements PlugIn {
 	//							IJLog.log("check path " + path.toString());
 								if(!removedArtifacts.contains(path)) {
 									String currentVersion = versionsOfCurrentComps.get(checkComp);
-									if (isFileConflicting(path, checkVer, currentVersion, newInstalledPaths)) { // reqVersion)) {
+									if (isFileConflicting(path, checkVer, currentVersion, installedPaths)) { // reqVersion)) {
 										conflictsFound = true;
 										new JavaCVDependency(path.getFileName().toString(),
 												path.getParent().toString() + File.separator, null).remove();
@@ -1419,31 +2056,122 @@ public class JavaCV_Installer implements PlugIn {
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
+		return conflictsFound;
+	}
 
-		installConfirmed = installConfirmed || conflictsFound || installEvent;
+	/**
+	 * Changes the installed version to the one of the profile: the files which
+	 * differ are marked for deletion and the files of the profile are linked to
+	 * the update folder. The lock is keyed on the requested components.
+	 */
+	private static boolean switchToProfile(VersionProfile profile, List<String> reqComps, String messageTitle,
+			boolean macroConfirmed, boolean activate) {
+		String msg = "The current installed JavaCV version (" + installedJavaCVVersion + ") will be changed to "
+				+ profile.getVersion();
+		if (!macroConfirmed) {
+			ConfirmDialog cd = new ConfirmDialog(messageTitle, msg + ".\nContinue?");
+			if (!cd.wasOKed()) {
+				Prefs.set("javacv.install_result", "canceled");
+				return false;
+			}
+		}
+		IJLog.log(msg + " from its stored profile");
+		storeInstalledProfile();
 
-		if (installConfirmed || forceReinstall) {
-			IJ.showMessage("JavaCV installation", "Please restart ImageJ now");
-			IJLog.log("ImageJ restart is required after javacv installation!");
-			IJLog.log("---------------------------------------------");
-			restartRequired = true;
-		} else
-			restartRequired = false;
+		Map<String, Path> artifacts = profile.getArtifacts();
+		Set<Path> removedArtifacts = new HashSet<>();
+		// the profile files are immutable links into the local repository, they are
+		// linked to the update folder rather than copied whatever the preference
+		StagingCopier copier = new StagingCopier(true);
+		try {
+			for (String art : installedArtifacts) {
+				Path artPath = Paths.get(art);
+				Path profilePath = artifacts.get(art);
+				if (profilePath != null && StagingCopier.isIdentical(profilePath, artPath))
+					continue;
+				if (!new JavaCVDependency(artPath.getFileName().toString(),
+						artPath.getParent().toString() + File.separator, null).remove())
+					return false;
+				removedArtifacts.add(artPath);
+			}
+			for (Map.Entry<String, Path> artifact : artifacts.entrySet()) {
+				Path installedPath = Paths.get(artifact.getKey());
+				if (StagingCopier.isIdentical(artifact.getValue(), installedPath))
+					continue;
+				Path stagingPath = new JavaCVDependency(installedPath.getFileName().toString(),
+						installedPath.getParent().toString() + File.separator, artifact.getValue().toString())
+						.getStagingPath();
+				if (stagingPath == null)
+					return false;
+				copier.add(artifact.getValue(), stagingPath);
+			}
+			copier.run();
+		} catch (Exception e) {
+			IJLog.log("Install error: " + e.getMessage());
+			e.printStackTrace();
+			Prefs.set("javacv.install_result", "cannot install");
+			return false;
+		}
 
-		if (installed) {
-			installedJavaCVVersion = reqVersion;
-			installedComponents.addAll(reqComps);
-			installedArtifacts.addAll(newInstalled);// (artifactResults.stream().map(x->x.getArtifact().getFile().getPath()).collect(Collectors.toList()));
-			try {
-				writeInstallCfg();
-				Prefs.set("javacv.install_result", restartRequired ? "restart required" : "success");
-			} catch (ParserConfigurationException | TransformerException e) {
-				e.printStackTrace();
+		// the same steps as after an install from the local repository
+		List<String> profileComps = new ArrayList<>(profile.getComponents());
+		removeConflicts(profile.getVersion(), profileComps,
+				artifacts.keySet().stream().map(x -> Paths.get(x)).collect(Collectors.toSet()), removedArtifacts);
+		ResolutionLock lock = new ResolutionLock(installerDirectory, profile.getVersion(), platformSpecifier,
+				reqComps);
+		List<Path> sources = new ArrayList<>();
+		boolean locked = true;
+		try {
+			for (Map.Entry<String, Path> artifact : artifacts.entrySet()) {
+				String[] origin = profile.getOrigin(artifact.getKey());
+				if (origin == null) {
+					// a lock with missing files would pass the checks
+					locked = false;
+					break;
+				}
+				lock.add(origin[0], Paths.get(artifact.getKey()), artifact.getValue());
+				sources.add(Paths.get(origin[1]));
 			}
+			if (locked)
+				lock.save();
+		} catch (IOException e) {
+			IJLog.log("Cannot write the resolution lock: " + e);
+		}
+		localRepoCache.touch(sources);
 
+		installedComponents = Collections.unmodifiableSet(new HashSet<>(profile.getComponents()));
+		installedArtifacts = Collections.unmodifiableSet(new HashSet<>(artifacts.keySet()));
+		installedJavaCVVersion = profile.getVersion();
+		try {
+			writeInstallCfg();
+		} catch (ParserConfigurationException | TransformerException e) {
+			e.printStackTrace();
 		}
+		// the profile is saved again as the most recently used one
+		profile.save();
+		VersionProfile.prune(installerDirectory, profile.getVersion());
+		enforceLocalRepoBudget();
+		if (activate) {
+			IJLog.log("JavaCV is activated for this session, the files are installed on the next start");
+			Prefs.set("javacv.install_result", "success");
+			return true;
+		}
+		showMessage("JavaCV installation", "Please restart ImageJ now");
+		IJLog.log("ImageJ restart is required after javacv installation!");
+		IJLog.log("---------------------------------------------");
+		restartRequired = true;
+		Prefs.set("javacv.install_result", "restart required");
+		return true;
+	}
 
-		return installed;
+	/**
+	 * Shows the message in a dialog, or only logs it if there is no display.
+	 */
+	private static void showMessage(String title, String msg) {
+		if (GraphicsEnvironment.isHeadless())
+			IJLog.log(title + ": " + msg);
+		else
+			IJ.showMessage(title, msg);
 	}
 
 	public static boolean isARM() {
@@ -1461,18 +2189,5 @@ public class JavaCV_Installer implements PlugIn {
 		if (IJ.isMacOSX()) return dirName + "x";
 		else return dirName + "64";
 	}
-	
-	private static void listFiles(Path startingPath, String pattern, boolean recursive,  List<Path> filesList) throws IOException {
-		try (DirectoryStream<Path> stream = Files.newDirectoryStream(startingPath)) 
-        {
-            for (Path entry : stream) {
-                if (Files.isDirectory(entry)) {
-                    if (recursive) listFiles(entry, pattern, recursive, filesList);
-                } else if (entry.toFile().getName().matches(pattern)) {
-                	filesList.add(entry);
-                }
-            }
-        }
-    }
 
 }
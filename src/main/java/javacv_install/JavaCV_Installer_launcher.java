@@ -1,24 +1,39 @@
 package javacv_install;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLClassLoader;
 import java.net.URLConnection;
-import java.nio.file.DirectoryStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import ij.IJ;
 import ij.Prefs;
@@ -32,6 +47,31 @@ public class JavaCV_Installer_launcher implements PlugIn {
 	private static final String INSTALLER_CLASS_NAME = "JavaCV_Installer";
 	private static final String INSTALLER_PKG = "javacv_install";
 	private static final String MSG_TITLE = "JavaCV Installer";
+	/** Suffix of the temporary file a dependency is downloaded to */
+	static final String PART_SUFFIX = ".part";
+	/** Suffix of the file keeping the validators of a partial download */
+	static final String PART_INFO_SUFFIX = ".part.properties";
+	/** HTTP status of a Range request which does not fit the remote file */
+	private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+	/** Maximum number of bytes moved by a single channel transfer */
+	private static final long TRANSFER_CHUNK = 1 << 16;
+	/** Repository the resolver bundle of the installer is deployed to */
+	private static final String SCIJAVA_BASE_URL = "https://maven.scijava.org/content/groups/public/";
+	private static final String SCIJAVA_SNAPSHOTS_URL = "https://maven.scijava.org/content/repositories/snapshots/";
+	private static final String INSTALLER_REL_PATH = "anotherche/plugins/imagej/JavaCV_Installer/";
+	/** Name of the single resolver jar in the jars folder, see the resolver-bundle profile */
+	private static final String RESOLVER_BUNDLE_NAME = "javacv-installer-resolver";
+	private static final String RESOLVER_BUNDLE_URL_KEY = "javacv.resolver_bundle_url";
+	/** Preference key enabling the restart-free bootstrap into a private folder */
+	private static final String ISOLATED_BOOTSTRAP_KEY = "javacv.isolated_bootstrap";
+	/** Digest algorithms and extensions of checksum files, strongest first */
+	private static final String[][] CHECKSUM_ALGORITHMS = { { "SHA-256", ".sha256" }, { "SHA-1", ".sha1" } };
+	/** Connection timeouts (ms), a stalled download is kept and resumed later */
+	private static final int CONNECT_TIMEOUT = 30000;
+	private static final int READ_TIMEOUT = 60000;
+	/** Preference key with the number of concurrent bootstrap downloads */
+	private static final String BOOTSTRAP_THREADS_KEY = "javacv.bootstrap_threads";
+	private static final int DEFAULT_BOOTSTRAP_THREADS = 4;
 
 	private static ArrayList<Artifact> artifacts;
 	private static ArrayList<Dependency> dependencies;
@@ -39,6 +79,8 @@ public class JavaCV_Installer_launcher implements PlugIn {
 	private static String dependencyPath;
 	private static boolean restartRequired;
 	private static boolean updateLoader;
+	private static boolean isolatedBootstrap;
+	private static IsolatedClassLoader isolatedLoader;
 
 	static {
 		artifacts = new ArrayList<>();
@@ -71,17 +113,42 @@ public class JavaCV_Installer_launcher implements PlugIn {
 		/** where to deploy the Installer */
 		installerDirectory = IJ.getDirectory("plugins") + INSTALLER_CLASS_NAME + File.separatorChar;
 		dependencies = new ArrayList<>();
-		dependencyPath = getDependenciesPath();// installerDirectory;
+		isolatedBootstrap = Prefs.get(ISOLATED_BOOTSTRAP_KEY, false);
+		// in the isolated mode the resolver jars never go to the jars folder
+		dependencyPath = isolatedBootstrap ? installerDirectory + "bootstrap" + File.separatorChar
+				: getDependenciesPath();// installerDirectory;
 
-		for (int i = 0; i < artifacts.size(); i++) {
-			dependencies.add(new Dependency(artifacts.get(i).getName(), artifacts.get(i).getVersion(), dependencyPath,
-					artifacts.get(i).getURL()));
+		Properties bootstrap = readBootstrapProperties();
+		String version = bootstrap.getProperty("version", "");
+		if (Boolean.parseBoolean(bootstrap.getProperty("resolver.bundle"))) {
+			// the plugin is built against the relocated resolver stack packed in one jar,
+			// the separate resolver jars cannot replace it
+			dependencies.add(new Dependency(RESOLVER_BUNDLE_NAME, version, dependencyPath,
+					Prefs.get(RESOLVER_BUNDLE_URL_KEY, getResolverBundleURL(version))));
+		} else {
+			for (int i = 0; i < artifacts.size(); i++) {
+				dependencies.add(new Dependency(artifacts.get(i).getName(), artifacts.get(i).getVersion(), dependencyPath,
+						artifacts.get(i).getURL()));
+			}
 		}
 		restartRequired = false;
 		updateLoader = false;
 
 	}
 
+	/**
+	 * Returns true for a numeric version, e.g. not for a snapshot, which cannot
+	 * be compared with installed files.
+	 */
+	private static boolean isReleaseVersion(String version) {
+		try {
+			VerParser.of(version);
+			return true;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
 	@Override
 	public void run(String arg) {
 		if (arg.equals("about")) {
@@ -95,6 +162,11 @@ public class JavaCV_Installer_launcher implements PlugIn {
 		}
 		IJ.register(this.getClass());
 		if (checkDependencies(false, false)) {
+			if (isolatedBootstrap) {
+				Prefs.set("javacv.install_result_launcher", "success");
+				runIsolated(arg);
+				return;
+			}
 //			if(restartRequired) {
 //				Prefs.set("javacv.install_result_launcher", "restart required");
 //				IJLog.log("Please restart ImageJ to proceed with installation of necessary JavaCV libraries.");
@@ -118,6 +190,74 @@ public class JavaCV_Installer_launcher implements PlugIn {
 
 	}
 
+	/**
+	 * Runs the installer in a child class loader over the resolver jars of the
+	 * private bootstrap folder, so no restart is needed after the bootstrap. The
+	 * loader is kept for the rest of the session.
+	 */
+	private static void runIsolated(String arg) {
+		try {
+			PlugIn installer = (PlugIn) getIsolatedLoader().loadClass(INSTALLER_PKG + "." + INSTALLER_CLASS_NAME)
+					.getDeclaredConstructor().newInstance();
+			installer.run(arg);
+		} catch (Exception | LinkageError e) {
+			IJ.error(MSG_TITLE, "Cannot start the installer in the isolated mode:\n" + e);
+			IJLog.log(e.toString());
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Entry point of {@link JavaCV_Installer#checkJavaCV(String, String, boolean, boolean)}
+	 * for other plugins which is safe in the isolated mode. There the resolver is
+	 * not visible to the ImageJ class loader, so JavaCV_Installer can only be used
+	 * from the isolated loader and a direct call fails with NoClassDefFoundError.
+	 * Otherwise the call goes to the installer as is.
+	 */
+	public static boolean checkJavaCV(String reqCompNames, String reqVersion, boolean showOptDlg,
+			boolean forceReinstall) {
+		if (!isolatedBootstrap)
+			return JavaCV_Installer.checkJavaCV(reqCompNames, reqVersion, showOptDlg, forceReinstall);
+		if (!checkDependencies(false, false))
+			return false;
+		try {
+			Object passed = getIsolatedLoader().loadClass(INSTALLER_PKG + "." + INSTALLER_CLASS_NAME)
+					.getMethod("checkJavaCV", String.class, String.class, boolean.class, boolean.class)
+					.invoke(null, reqCompNames, reqVersion, showOptDlg, forceReinstall);
+			return Boolean.TRUE.equals(passed);
+		} catch (Exception | LinkageError e) {
+			IJLog.log("Cannot check JavaCV in the isolated mode: " + e);
+			if (IJ.debugMode)
+				e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Same as {@link #checkJavaCV(String, String, boolean, boolean)} without
+	 * options dialog and forced reinstallation.
+	 */
+	public static boolean checkJavaCV(String reqCompNames, String reqVersion) {
+		return checkJavaCV(reqCompNames, reqVersion, false, false);
+	}
+
+	private static synchronized IsolatedClassLoader getIsolatedLoader() throws IOException {
+		if (isolatedLoader == null) {
+			List<URL> urls = new ArrayList<>();
+			// the plugin jar itself, the installer classes must see the private resolver
+			urls.add(JavaCV_Installer_launcher.class.getProtectionDomain().getCodeSource().getLocation());
+			for (Dependency dep : dependencies) {
+				Path path = dep.getInstalledPath();
+				if (path == null)
+					throw new IOException(dep.getFileName() + " is not installed in " + dep.getDirectory());
+				urls.add(path.toUri().toURL());
+			}
+			isolatedLoader = new IsolatedClassLoader(urls.toArray(new URL[0]),
+					JavaCV_Installer_launcher.class.getClassLoader(), IsolatedClassLoader.RESOLVER_PACKAGES);
+		}
+		return isolatedLoader;
+	}
+
 	public void showAbout() {
 		IJ.showMessage("JavaCV_Installer", "ImageJ plugin which helps to download and to install components of javacv\n"
 				+ "package (java interface to OpenCV, FFmpeg and other) by Samuel Audet.\n" + "     \n"
@@ -130,7 +270,10 @@ public class JavaCV_Installer_launcher implements PlugIn {
 				+ "without consequences (next calls to the plugin will recreate the minimum\n"
 				+ "required local repository).\n" + "     \n"
 				+ "The plugin also provides a helper function to check/install required \n"
-				+ "parts of javacv from other user's plugins. \n" + "     \n" + "More information is available at \n"
+				+ "parts of javacv from other user's plugins. \n" + "     \n"
+				+ "Optional settings (e.g. \"javacv.isolated_bootstrap\" to avoid the restart\n"
+				+ "after the first installation) are described in the README of the plugin.\n" + "     \n"
+				+ "More information is available at \n"
 				+ "https://forum.image.sc/t/new-javacv-installer-plugin/55392  ");
 	}
 
@@ -226,28 +369,35 @@ public class JavaCV_Installer_launcher implements PlugIn {
 		}
 
 		public boolean isInstalled() {
-			if ((new File(depDirectory + depFilename)).exists())
-				return true;
-			DirectoryStream<Path> dirStream;
-			try {
-				dirStream = Files.newDirectoryStream(Paths.get(depDirectory), depName + "*.jar");
-				for (Path path : dirStream) {
-					String name = path.getFileName().toString();
-					String ver = getJarVersion(name);
-					VerParser chkVer = new VerParser(ver);
-					VerParser reqDepVer = new VerParser(depVersion);
-					if (chkVer.compareTo(reqDepVer) >= 0)
-						return true;
-				}
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-			return false;
+			return getInstalledPath() != null;
+		}
 
+		/**
+		 * Returns the installed file of the dependency, either of the required
+		 * version or of a newer one, or null if it is not installed.
+		 */
+		public Path getInstalledPath() {
+			Path path = Paths.get(depDirectory, depFilename);
+			if (Files.isRegularFile(path))
+				return path;
+			for (JarIndex.Jar jar : JarIndex.of(depDirectory).getJars(depDirectory, depName)) {
+				// the prefix also matches e.g. maven-model-builder for maven-model
+				if (!jar.getArtifactId().equals(depName))
+					continue;
+				String ver = jar.getVersion();
+				// e.g. a snapshot is not comparable
+				if (isReleaseVersion(ver) && isReleaseVersion(depVersion)
+						&& VerParser.of(ver).compareTo(VerParser.of(depVersion)) >= 0)
+					return jar.getPath();
+			}
+			return null;
 		}
 
 		/**
-		 * Download and install an artifact specified by the dependency
+		 * Download and install an artifact specified by the dependency. An
+		 * interrupted download is kept as a partial file together with the
+		 * validators (ETag/Last-Modified) of the response and is resumed with a
+		 * Range request next time, provided the remote file has not changed.
 		 */
 		public boolean install() throws Exception {
 			boolean success = false;
@@ -255,40 +405,324 @@ public class JavaCV_Installer_launcher implements PlugIn {
 				return success;
 
 			IJLog.log("downloading " + depURL);
-			InputStream is = null;
 			URL url = null;
 			try {
 				url = new URL(depURL);
-				URLConnection conn = url.openConnection();
-				is = conn.getInputStream();
 			} catch (MalformedURLException e1) {
 				throw new Exception(depURL + " is not a valid URL");
+			}
+			File out = new File(depDirectory, depFilename);
+			Path target = out.toPath();
+			Path part = Paths.get(depDirectory, out.getName() + PART_SUFFIX);
+			Path partInfo = Paths.get(depDirectory, out.getName() + PART_INFO_SUFFIX);
+
+			Checksum checksum = fetchChecksum();
+			String validator = getResumeValidator(part, partInfo);
+			long offset = validator != null ? Files.size(part) : 0;
+			InputStream is = null;
+			URLConnection conn = null;
+			try {
+				conn = url.openConnection();
+				conn.setConnectTimeout(CONNECT_TIMEOUT);
+				conn.setReadTimeout(READ_TIMEOUT);
+				if (offset > 0) {
+					conn.setRequestProperty("Range", "bytes=" + offset + "-");
+					conn.setRequestProperty("If-Range", validator);
+				}
+				is = conn.getInputStream();
+			} catch (FileNotFoundException e1) {
+				throw e1;
 			} catch (IOException e1) {
+				if (offset > 0 && isRangeNotSatisfiable(conn)) {
+					// a stale partial file, start from scratch (without a range, so only once)
+					discardPart(part, partInfo);
+					return install();
+				}
+				// e.g. a timeout or a reset connection, the partial file is kept for the next time
 				throw new Exception("Can't open connection to " + depURL);
 			}
-			byte[] content = readFully(is);
-			File out = new File(depDirectory, new File(url.getFile()).getName());
+			if (offset > 0 && !isResumed(conn, offset))
+				offset = 0;
+			if (offset > 0)
+				IJLog.log(" resuming " + out.getName() + " at byte " + offset);
+			else
+				writePartInfo(partInfo, conn);
 			IJLog.log(" to " + out.getAbsolutePath());
-			FileOutputStream fos = null;
+
+			// the digest is updated by the same reads that feed the file
+			MessageDigest digest = null;
+			if (checksum != null) {
+				digest = MessageDigest.getInstance(checksum.getAlgorithm());
+				if (offset > 0)
+					updateDigest(digest, part, offset);
+				is = new DigestInputStream(is, digest);
+			}
+			long expected = conn.getContentLengthLong();
+			long position = offset;
+			try (ReadableByteChannel in = Channels.newChannel(is);
+					FileChannel fc = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+				fc.truncate(offset);
+				long count;
+				while ((count = fc.transferFrom(in, position, TRANSFER_CHUNK)) > 0)
+					position += count;
+			} catch (IOException e) {
+				throw new Exception("Download of " + depURL + " was interrupted after " + position
+						+ " bytes. It will be resumed next time.");
+			}
+			if (expected >= 0 && position - offset != expected)
+				throw new Exception("Download of " + depURL + " is incomplete (" + position + " bytes). "
+						+ "It will be resumed next time.");
+			if (digest != null && !checksum.matches(digest.digest())) {
+				discardPart(part, partInfo);
+				throw new Exception("Checksum (" + checksum.getAlgorithm() + ") of " + depURL
+						+ " does not match. The downloaded file is rejected.");
+			}
 			try {
-				fos = new FileOutputStream(out);
-				fos.write(content);
-				fos.close();
+				moveIntoPlace(part, target);
+				Files.deleteIfExists(partInfo);
 				success = true;
-			} catch (FileNotFoundException e1) {
+			} catch (IOException e) {
+				discardPart(part, partInfo);
 				throw new Exception(
-						"Could not open " + out.getAbsolutePath() + " for writing. " + "Maybe not enough permissions?");
-			} catch (IOException e2) {
-				throw new Exception("Error writing to " + out.getAbsolutePath());
+						"Could not move " + part.toAbsolutePath() + " to " + out.getAbsolutePath() + ". " + "Maybe not enough permissions?");
 			}
 
 			return success;
 		}
+
+		/**
+		 * Downloads the checksum published next to the artifact in the maven
+		 * layout. The strongest available algorithm is used, null is returned if
+		 * the repository provides none.
+		 */
+		private Checksum fetchChecksum() {
+			for (String[] algorithm : CHECKSUM_ALGORITHMS) {
+				String checksumURL = depURL + algorithm[1];
+				try {
+					URLConnection conn = new URL(checksumURL).openConnection();
+					conn.setConnectTimeout(CONNECT_TIMEOUT);
+					conn.setReadTimeout(READ_TIMEOUT);
+					StringBuilder content = new StringBuilder();
+					try (InputStream is = conn.getInputStream()) {
+						byte[] buffer = new byte[256];
+						int count;
+						while ((count = is.read(buffer)) != -1 && content.length() < 1024)
+							content.append(new String(buffer, 0, count, StandardCharsets.US_ASCII));
+					}
+					// the file may also contain the name of the artifact after the hash
+					String[] tokens = content.toString().trim().split("\\s+");
+					if (tokens.length > 0 && tokens[0].matches("[0-9a-fA-F]+"))
+						return new Checksum(algorithm[0], tokens[0]);
+				} catch (IOException e) {
+					if (IJ.debugMode)
+						IJLog.log("No checksum at " + checksumURL);
+				}
+			}
+			IJLog.log("WARNING: No checksum available for " + depURL + ", the file is not verified");
+			return null;
+		}
+
+		/**
+		 * Feeds the already downloaded part of a resumed file to the digest.
+		 */
+		private static void updateDigest(MessageDigest digest, Path part, long length) throws IOException {
+			try (InputStream is = Files.newInputStream(part)) {
+				byte[] buffer = new byte[(int) TRANSFER_CHUNK];
+				long remaining = length;
+				int count;
+				while (remaining > 0 && (count = is.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+					digest.update(buffer, 0, count);
+					remaining -= count;
+				}
+			}
+		}
+
+		/**
+		 * Returns the validator to send in the If-Range header when a partial
+		 * download of this dependency can be resumed, null otherwise.
+		 */
+		private String getResumeValidator(Path part, Path partInfo) {
+			if (!Files.isRegularFile(part) || !Files.isRegularFile(partInfo))
+				return null;
+			Properties info = new Properties();
+			try (InputStream is = Files.newInputStream(partInfo)) {
+				info.load(is);
+				if (!depURL.equals(info.getProperty("url")) || Files.size(part) == 0)
+					return null;
+			} catch (IOException e) {
+				return null;
+			}
+			// weak entity tags are not allowed in If-Range
+			String etag = info.getProperty("etag");
+			if (etag != null && !etag.startsWith("W/"))
+				return etag;
+			return info.getProperty("last-modified");
+		}
+
+		/**
+		 * Stores the validators of a fresh response next to the partial file. A
+		 * response without validators is not resumable, so nothing is stored.
+		 */
+		private void writePartInfo(Path partInfo, URLConnection conn) throws IOException {
+			Files.deleteIfExists(partInfo);
+			String etag = conn.getHeaderField("ETag");
+			String lastModified = conn.getHeaderField("Last-Modified");
+			if (etag == null && lastModified == null)
+				return;
+			Properties info = new Properties();
+			info.setProperty("url", depURL);
+			if (etag != null)
+				info.setProperty("etag", etag);
+			if (lastModified != null)
+				info.setProperty("last-modified", lastModified);
+			try (OutputStream os = Files.newOutputStream(partInfo)) {
+				info.store(os, "Partial download of " + depFilename);
+			}
+		}
+
+		/**
+		 * Returns true if the server rejected the Range request (416), i.e. the
+		 * partial file does not fit the remote file anymore.
+		 */
+		private static boolean isRangeNotSatisfiable(URLConnection conn) {
+			try {
+				return conn instanceof HttpURLConnection && ((HttpURLConnection) conn)
+						.getResponseCode() == HTTP_RANGE_NOT_SATISFIABLE;
+			} catch (IOException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * Returns true if the server answered the Range request with the remainder
+		 * of the unchanged file. With a changed file If-Range makes the server send
+		 * the whole file (200) instead.
+		 */
+		private static boolean isResumed(URLConnection conn, long offset) {
+			try {
+				if (!(conn instanceof HttpURLConnection)
+						|| ((HttpURLConnection) conn).getResponseCode() != HttpURLConnection.HTTP_PARTIAL)
+					return false;
+			} catch (IOException e) {
+				return false;
+			}
+			String range = conn.getHeaderField("Content-Range");
+			return range != null && range.startsWith("bytes " + offset + "-");
+		}
+
+		private static void discardPart(Path part, Path partInfo) throws IOException {
+			Files.deleteIfExists(part);
+			Files.deleteIfExists(partInfo);
+		}
 	}
 
-	static class VerParser implements Comparable<VerParser> {
+	/**
+	 * Child-first class loader for classes and resources under the given package
+	 * prefixes, everything else is delegated to the parent first. The launcher uses
+	 * it for the installer and the resolver stack (the whole javacv_install package
+	 * is loaded again, as the installer uses package-private members of the
+	 * launcher). ImageJ and JDK classes still come from the parent.
+	 */
+	static class IsolatedClassLoader extends URLClassLoader {
+
+		static final String[] RESOLVER_PACKAGES = { INSTALLER_PKG + ".", "org.eclipse.aether.", "org.apache.maven.",
+				"org.codehaus.plexus.", "org.apache.http.", "org.apache.commons.codec." };
 
-		private String version;
+		private final String[] childFirst;
+
+		static {
+			registerAsParallelCapable();
+		}
+
+		public IsolatedClassLoader(URL[] urls, ClassLoader parent, String... childFirst) {
+			super(urls, parent);
+			this.childFirst = childFirst;
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (!isChildFirst(name))
+				return super.loadClass(name, resolve);
+			synchronized (getClassLoadingLock(name)) {
+				Class<?> c = findLoadedClass(name);
+				if (c == null) {
+					try {
+						c = findClass(name);
+					} catch (ClassNotFoundException e) {
+						c = super.loadClass(name, false);
+					}
+				}
+				if (resolve)
+					resolveClass(c);
+				return c;
+			}
+		}
+
+		@Override
+		public URL getResource(String name) {
+			if (isChildFirst(name.replace('/', '.'))) {
+				URL url = findResource(name);
+				if (url != null)
+					return url;
+			}
+			return super.getResource(name);
+		}
+
+		@Override
+		public Enumeration<URL> getResources(String name) throws IOException {
+			if (!isChildFirst(name.replace('/', '.')))
+				return super.getResources(name);
+			List<URL> urls = Collections.list(findResources(name));
+			ClassLoader parent = getParent();
+			if (parent != null)
+				for (URL url : Collections.list(parent.getResources(name)))
+					if (!urls.contains(url))
+						urls.add(url);
+			return Collections.enumeration(urls);
+		}
+
+		private boolean isChildFirst(String name) {
+			for (String prefix : childFirst)
+				if (name.startsWith(prefix))
+					return true;
+			return false;
+		}
+	}
+
+	static class Checksum {
+		private String algorithm;
+		private String value;
+
+		public Checksum(String algorithm, String value) {
+			this.algorithm = algorithm;
+			this.value = value.toLowerCase(Locale.US);
+		}
+
+		public String getAlgorithm() {
+			return algorithm;
+		}
+
+		public boolean matches(byte[] digest) {
+			StringBuilder hex = new StringBuilder(digest.length * 2);
+			for (byte b : digest)
+				hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			return hex.toString().equals(value);
+		}
+	}
+
+	/**
+	 * Version made of numeric parts separated by dots or dashes. The parts are
+	 * parsed once, instances returned by {@link #of(String)} are shared per
+	 * version string.
+	 */
+	static final class VerParser implements Comparable<VerParser> {
+
+		private static final Map<String, VerParser> INTERNED = new ConcurrentHashMap<>();
+
+		private final String version;
+		private final int[] parts;
+		/** number of parts without the trailing zeros, 1.5 equals 1.5.0 */
+		private final int length;
 
 		public final String get() {
 			return this.version;
@@ -297,21 +731,68 @@ public class JavaCV_Installer_launcher implements PlugIn {
 		public VerParser(String version) {
 			if (version == null)
 				throw new IllegalArgumentException("Version can not be null");
-			if (!version.matches("^(\\d+)(\\.\\d+)*(-((\\d+)(\\.\\d+)*))*$"))
-				throw new IllegalArgumentException("Invalid version format: " + version);
 			this.version = version;
+			this.parts = parse(version);
+			int len = parts.length;
+			while (len > 0 && parts[len - 1] == 0)
+				len--;
+			this.length = len;
+		}
+
+		/**
+		 * Returns the shared instance for the version string.
+		 */
+		static VerParser of(String version) {
+			if (version == null)
+				throw new IllegalArgumentException("Version can not be null");
+			VerParser verParser = INTERNED.get(version);
+			if (verParser == null) {
+				verParser = new VerParser(version);
+				VerParser previous = INTERNED.putIfAbsent(version, verParser);
+				if (previous != null)
+					verParser = previous;
+			}
+			return verParser;
+		}
+
+		private static int[] parse(String version) {
+			int count = 1;
+			for (int i = 0; i < version.length(); i++) {
+				char c = version.charAt(i);
+				if (c == '.' || c == '-')
+					count++;
+			}
+			int[] parts = new int[count];
+			int part = 0;
+			long value = 0;
+			boolean digits = false;
+			for (int i = 0; i <= version.length(); i++) {
+				char c = i < version.length() ? version.charAt(i) : '.';
+				if (c >= '0' && c <= '9') {
+					value = value * 10 + (c - '0');
+					if (value > Integer.MAX_VALUE)
+						throw new IllegalArgumentException("Invalid version format: " + version);
+					digits = true;
+				} else if ((c == '.' || c == '-') && digits) {
+					parts[part++] = (int) value;
+					value = 0;
+					digits = false;
+				} else
+					throw new IllegalArgumentException("Invalid version format: " + version);
+			}
+			return parts;
 		}
 
 		@Override
 		public int compareTo(VerParser that) {
 			if (that == null)
 				return 1;
-			String[] thisParts = this.get().split("[.-]");
-			String[] thatParts = that.get().split("[.-]");
-			int length = Math.max(thisParts.length, thatParts.length);
+			if (this == that)
+				return 0;
+			int length = Math.max(this.parts.length, that.parts.length);
 			for (int i = 0; i < length; i++) {
-				int thisPart = i < thisParts.length ? Integer.parseInt(thisParts[i]) : 0;
-				int thatPart = i < thatParts.length ? Integer.parseInt(thatParts[i]) : 0;
+				int thisPart = i < this.parts.length ? this.parts[i] : 0;
+				int thatPart = i < that.parts.length ? that.parts[i] : 0;
 				if (thisPart < thatPart)
 					return -1;
 				if (thisPart > thatPart)
@@ -331,6 +812,14 @@ public class JavaCV_Installer_launcher implements PlugIn {
 			return this.compareTo((VerParser) that) == 0;
 		}
 
+		@Override
+		public int hashCode() {
+			int hash = 1;
+			for (int i = 0; i < length; i++)
+				hash = 31 * hash + parts[i];
+			return hash;
+		}
+
 	}
 
 	/**
@@ -353,41 +842,69 @@ public class JavaCV_Installer_launcher implements PlugIn {
 	}
 
 	static String getJarVersion(String name) {
-		int dirIndex = name.lastIndexOf('/');
-		if(dirIndex > -1) name = name.substring(dirIndex + 1);
-		dirIndex = name.lastIndexOf('\\');
-		if(dirIndex > -1) name = name.substring(dirIndex + 1);
-		int Dash = name.indexOf("-");
-		if (Dash > -1) name = name.substring(Dash + 1);
-		String ver = name.replaceAll(".jar", "").replaceAll("[a-zA-Z]", "");
-		while (ver.startsWith("-"))
-			ver = ver.substring(1);
-		while (ver.endsWith("-"))
-			ver = ver.substring(0, ver.length() - 1);
-		Dash = ver.indexOf("--");
-		if (Dash > -1)
-			ver = ver.substring(0, Dash);
-		//commented out to get full version string
-//		Dash = ver.indexOf("-");
-//		if (Dash > -1)
-//			ver = ver.substring(Dash + 1);
-		return ver;
+		int start = Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1;
+		int dash = name.indexOf('-', start);
+		if (dash > -1)
+			start = dash + 1;
+		int end = name.endsWith(".jar") ? name.length() - 4 : name.length();
+		// the version is what is left without the letters and the surrounding dashes
+		StringBuilder ver = new StringBuilder(end - start);
+		for (int i = start; i < end; i++) {
+			char c = name.charAt(i);
+			if ((c < 'a' || c > 'z') && (c < 'A' || c > 'Z')) {
+				// cut at the first "--", i.e. where a classifier was removed
+				if (c == '-' && ver.length() > 0 && ver.charAt(ver.length() - 1) == '-') {
+					ver.setLength(ver.length() - 1);
+					break;
+				}
+				if (c != '-' || ver.length() > 0)
+					ver.append(c);
+			}
+		}
+		int length = ver.length();
+		while (length > 0 && ver.charAt(length - 1) == '-')
+			length--;
+		ver.setLength(length);
+		return ver.toString();
 	}
 
 	/**
-	 * Reads all bytes from the given InputStream and returns it as a byte array.
+	 * Reads the properties written by the build (plugin version and whether the
+	 * plugin is built against the relocated resolver bundle).
 	 */
-	private static byte[] readFully(InputStream is) throws Exception {
-		ByteArrayOutputStream buf = new ByteArrayOutputStream();
-		int c = 0;
-		try {
-			while ((c = is.read()) != -1)
-				buf.write(c);
-			is.close();
+	private static Properties readBootstrapProperties() {
+		Properties bootstrap = new Properties();
+		try (InputStream is = JavaCV_Installer_launcher.class.getResourceAsStream("bootstrap.properties")) {
+			if (is != null)
+				bootstrap.load(is);
 		} catch (IOException e) {
-			throw new Exception("Error reading from " + is);
+			if (IJ.debugMode)
+				IJLog.log(e.toString());
+		}
+		return bootstrap;
+	}
+
+	/**
+	 * Returns the URL of the resolver bundle attached to the given installer
+	 * version (classifier "resolver-bundle"), a snapshot is looked for in the
+	 * snapshot repository.
+	 */
+	static String getResolverBundleURL(String version) {
+		return (isReleaseVersion(version) ? SCIJAVA_BASE_URL : SCIJAVA_SNAPSHOTS_URL) + INSTALLER_REL_PATH + version + "/JavaCV_Installer-" + version
+				+ "-resolver-bundle.jar";
+	}
+
+	/**
+	 * Renames a completely downloaded file to its final name. The rename is atomic
+	 * where the file system supports it, so a half-written jar never appears under
+	 * the final name.
+	 */
+	static void moveIntoPlace(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
 		}
-		return buf.toByteArray();
 	}
 
 	private static String getDependenciesPath() {
@@ -407,50 +924,74 @@ public class JavaCV_Installer_launcher implements PlugIn {
 
 	/**
 	 * Returns true if all dependencies are found. Checks if all necessary
-	 * dependencies are installed, prompts to install if missing.
+	 * dependencies are installed, prompts to install if missing. Missing
+	 * dependencies are downloaded concurrently by a bounded pool of workers (the
+	 * pool size is read from the "javacv.bootstrap_threads" preference, 1 restores
+	 * sequential downloads). Every download reads the response to the end and
+	 * closes it, so the JDK keeps the connection to the repository alive for the
+	 * next worker. Conflicts are checked once all downloads are finished.
 	 */
 	private static boolean checkDependencies(boolean confirmRequired, boolean forceReinstall) {
 
-//		ArrayList<Dependency> dependencies = new ArrayList<Dependency>();
-//		String installPath = GetDependenciesPath();//installerDirectory;
-//		
-//		for (int i = 0; i<artifacts.size();i++) {
-//			dependencies.add(new Dependency (artifacts.get(i).getName(), artifacts.get(i).getVersion(), installPath, artifacts.get(i).getURL()));
-//		}
-
-		boolean installConfirmed = false;
-		boolean  installed = true;
-		boolean  installEvent = false;
+		List<Dependency> missing = new ArrayList<>();
 		for (Dependency dep : dependencies)
-			if (forceReinstall || !dep.isInstalled()) {
-				if (confirmRequired && !forceReinstall && !installConfirmed
-						&& !(installConfirmed = IJ.showMessageWithCancel("Dependency check",
-								"Not all required dependencies are installed.\n" + "Auto-install?")))
-					return false;
+			if (forceReinstall || !dep.isInstalled())
+				missing.add(dep);
+		if (missing.isEmpty())
+			return true;
 
-				try {
-					if (!dep.install())
-						return false;
-					else {
-						updateLoader = installEvent = true;
-						if (checkConflict(dependencyPath, dep)) {
-							restartRequired = true;
-						}
-					}
-				} catch (Exception e) {
-					IJ.error(e.getMessage());
-					IJLog.log(e.getMessage());
-					e.printStackTrace();
+		if (confirmRequired && !forceReinstall && !IJ.showMessageWithCancel("Dependency check",
+				"Not all required dependencies are installed.\n" + "Auto-install?"))
+			return false;
+		if (!checkCreateDirectory(dependencyPath))
+			return false;
+
+		int threads = Math.max(1,
+				Math.min(missing.size(), (int) Prefs.get(BOOTSTRAP_THREADS_KEY, DEFAULT_BOOTSTRAP_THREADS)));
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<Boolean>> downloads = new ArrayList<>();
+		for (Dependency dep : missing)
+			downloads.add(pool.submit(dep::install));
+		pool.shutdown();
+
+		boolean installed = true;
+		List<Dependency> downloaded = new ArrayList<>();
+		for (int i = 0; i < missing.size(); i++) {
+			Dependency dep = missing.get(i);
+			try {
+				if (downloads.get(i).get())
+					downloaded.add(dep);
+				else
 					installed = false;
-				}
+			} catch (InterruptedException e) {
+				pool.shutdownNow();
+				Thread.currentThread().interrupt();
+				return false;
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				String msg = cause.getMessage();
+				if (cause instanceof FileNotFoundException && dep.getDependencyName().equals(RESOLVER_BUNDLE_NAME))
+					msg = "Resolver bundle not found at " + msg + ".\nThis build of the plugin needs its relocated"
+							+ " resolver bundle,\nset the " + RESOLVER_BUNDLE_URL_KEY + " preference to its URL.";
+				IJ.error(msg);
+				IJLog.log(msg);
+				cause.printStackTrace();
+				installed = false;
 			}
+			IJ.showProgress(i + 1, missing.size());
+			IJLog.log("Downloaded " + (i + 1) + " of " + missing.size() + " dependencies", true);
+		}
+		IJLog.log(" ");
+
+		// the private bootstrap folder is neither on the class path nor shared with Fiji
+		if (!isolatedBootstrap) {
+			if (!downloaded.isEmpty())
+				updateLoader = true;
+			for (Dependency dep : downloaded)
+				if (checkConflict(dependencyPath, dep))
+					restartRequired = true;
+		}
 
-		// if (installConfirmed || forceReinstall) {
-//		if (installEvent) {
-//			IJ.showMessage("JavaCV installer deployment", "Please restart ImageJ now");
-//			IJLog.log("ImageJ restart is required after javacv installation!");
-//			restartRequired = true;
-//		} else restartRequired = false;
 		return installed;
 	}
 
@@ -459,9 +1000,13 @@ public class JavaCV_Installer_launcher implements PlugIn {
 		try {
 			String fileName = dep.getFileName();
 			String depName = dep.getDependencyName();
-			Set<String> jarFiles = filteredFileList(path, new String[] { depName }, new String[] { ".jar" }, true);
-			for (String jarFile : jarFiles) {
-				if (Paths.get(jarFile).compareTo(Paths.get(path, fileName)) != 0) {
+			for (JarIndex.Jar jar : JarIndex.of(path).getJars(depName + "-")) {
+				// skip artifacts which only share the prefix (maven-model vs maven-model-builder)
+				if (!jar.getArtifactId().equals(depName))
+					continue;
+				String jarFile = jar.getPath().toString();
+				if (!jar.getPath().toAbsolutePath().normalize()
+						.equals(Paths.get(path, fileName).toAbsolutePath().normalize())) {
 					removeFile(jarFile);
 					// IJLog.log("Remove file "+jarFile+" CONFLICTING WITH "+Paths.get(path,
 					// fileName).toString());
@@ -502,26 +1047,4 @@ public class JavaCV_Installer_launcher implements PlugIn {
 		}
 	}
 
-	private static Set<String> filteredFileList(String dir, String[] names, String[] extensions, boolean recursive)
-			throws IOException {
-
-		if (!new File(dir).exists())
-			return new HashSet<>();
-		Stream<Path> stream = recursive ? Files.walk(Paths.get(dir)).filter(Files::isRegularFile)
-				: Files.list(Paths.get(dir));
-		return stream.filter(file -> !Files.isDirectory(file)).filter(file -> doesFileNameFit(file, names, true))
-				.filter(file -> doesFileNameFit(file, extensions, false)).map(Path::toString)
-				.collect(Collectors.toSet());
-	}
-
-	private static boolean doesFileNameFit(Path file, String[] patterns, boolean starts) {
-		if (patterns == null)
-			return true;
-		String name = file.getFileName().toString();
-		boolean result = false;
-		for (String patt : patterns)
-			result = result || patt == null || patt.isEmpty() || (starts ? name.startsWith(patt) : name.endsWith(patt));
-		return result;
-	}
-
 }
@@ -0,0 +1,235 @@
+package javacv_install;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import ij.IJ;
+import ij.Prefs;
+
+/**
+ * Keeps the size of the local maven repository within a budget. The last use
+ * of each artifact version directory is recorded when it is resolved, and the
+ * least recently used directories are deleted when the repository is larger
+ * than the {@value #MAX_SIZE_KEY} preference (MB, no limit by default). Only
+ * version directories are deleted, never the artifact directories with their
+ * metadata. Directories holding installed files, files linked elsewhere (e.g.
+ * from a stored profile) or versions of the pinned JavaCV versions
+ * ({@value #PINNED_KEY}, separated by spaces) are never deleted.
+ */
+final class LocalRepoCache {
+
+	/** Preference key with the size budget (MB) of the local repository */
+	static final String MAX_SIZE_KEY = "javacv.local_repo_max_mb";
+	/** Preference key with the JavaCV versions which are never evicted */
+	static final String PINNED_KEY = "javacv.pinned_versions";
+	private static final double DEFAULT_MAX_SIZE = 0;
+
+	private final Path root;
+	private final File file;
+	/** version directory (relative to the root) -> time of the last use */
+	private final Map<String, Long> used = new HashMap<>();
+	private boolean loaded;
+
+	LocalRepoCache(Path root, File file) {
+		this.root = root;
+		this.file = file;
+	}
+
+	/**
+	 * Records the use of the version directories of the files.
+	 */
+	synchronized void touch(Collection<Path> files) {
+		load();
+		long now = System.currentTimeMillis();
+		for (Path path : files) {
+			Path dir = path.toAbsolutePath().normalize().getParent();
+			if (dir != null && dir.startsWith(root))
+				used.put(root.relativize(dir).toString(), now);
+		}
+		save();
+	}
+
+	/**
+	 * Deletes the least recently used version directories until the repository
+	 * fits the budget and returns the number of bytes freed.
+	 *
+	 * @param protectedNames names of the files which are kept in any case
+	 */
+	synchronized long enforce(Collection<String> protectedNames) {
+		long maxSize = (long) (Prefs.get(MAX_SIZE_KEY, DEFAULT_MAX_SIZE) * 1024 * 1024);
+		if (maxSize <= 0 || !Files.isDirectory(root))
+			return 0;
+		load();
+
+		// sizes, contents and last uses of the directories
+		Map<Path, Long> lastUses = new HashMap<>();
+		Set<Path> versionDirs = new HashSet<>();
+		Set<Path> keep = new HashSet<>();
+		long total = 0;
+		try (Stream<Path> stream = Files.walk(root)) {
+			for (Path path : stream.collect(Collectors.toList())) {
+				Path dir = path.getParent();
+				// only leaves are version directories, a parent holds the metadata of all versions
+				if (Files.isDirectory(path)) {
+					keep.add(dir);
+					continue;
+				}
+				total += Files.size(path);
+				lastUses.merge(dir, Files.getLastModifiedTime(path).toMillis(), Math::max);
+				String name = path.getFileName().toString();
+				if (name.equals("_remote.repositories") || name.endsWith(".pom"))
+					versionDirs.add(dir);
+				// deleting a linked file frees nothing
+				if (protectedNames.contains(name) || getLinkCount(path) > 1)
+					keep.add(dir);
+			}
+		} catch (IOException e) {
+			IJLog.log("Cannot read the local repository: " + e);
+			return 0;
+		}
+		if (total <= maxSize)
+			return 0;
+
+		String[] pinned = Prefs.get(PINNED_KEY, "").trim().split("[ ]+");
+		List<Path> candidates = new ArrayList<>();
+		for (Path dir : versionDirs) {
+			if (keep.contains(dir) || dir.equals(root) || isPinned(dir.getFileName().toString(), pinned))
+				continue;
+			Long lastUse = used.get(root.relativize(dir).toString());
+			if (lastUse != null)
+				lastUses.put(dir, lastUse);
+			candidates.add(dir);
+		}
+		candidates.sort(Comparator.comparing(lastUses::get));
+
+		long freed = 0;
+		for (Path dir : candidates) {
+			if (total - freed <= maxSize)
+				break;
+			freed += deleteVersion(dir);
+			used.remove(root.relativize(dir).toString());
+			if (IJ.debugMode)
+				IJLog.log("Evicted from the local repository: " + dir);
+		}
+		save();
+		return freed;
+	}
+
+	/**
+	 * Deletes the files of a version directory (it has no subdirectories) and
+	 * the directory itself, returns the number of bytes freed.
+	 */
+	private static long deleteVersion(Path dir) {
+		long freed = 0;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+			for (Path path : stream) {
+				long size = Files.size(path);
+				Files.delete(path);
+				freed += size;
+			}
+			Files.delete(dir);
+		} catch (IOException e) {
+			IJLog.log("Cannot delete " + dir + ": " + e);
+		}
+		return freed;
+	}
+
+	/**
+	 * Returns the number of hard links to the file, 1 if it is not known.
+	 */
+	private static int getLinkCount(Path path) {
+		try {
+			return (Integer) Files.getAttribute(path, "unix:nlink");
+		} catch (IOException | UnsupportedOperationException | IllegalArgumentException | ClassCastException e) {
+			return 1;
+		}
+	}
+
+	/**
+	 * Returns true if the artifact version belongs to a pinned JavaCV version,
+	 * e.g. 4.5.1-1.5.5 or 1.5.5 to 1.5.5.
+	 */
+	private static boolean isPinned(String version, String[] pinned) {
+		for (String pin : pinned)
+			if (!pin.isEmpty() && (version.equals(pin) || version.endsWith("-" + pin)))
+				return true;
+		return false;
+	}
+
+	private void load() {
+		if (loaded)
+			return;
+		loaded = true;
+		if (!file.exists())
+			return;
+		try {
+			DocumentBuilder dBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+			Document doc = dBuilder.parse(file);
+			NodeList nDirList = doc.getDocumentElement().getElementsByTagName("dir");
+			for (int i = 0; i < nDirList.getLength(); i++) {
+				Element nDir = (Element) nDirList.item(i);
+				used.put(nDir.getAttribute("path"), Long.parseLong(nDir.getAttribute("used")));
+			}
+		} catch (SAXException | IOException | ParserConfigurationException | NumberFormatException e) {
+			if (IJ.debugMode)
+				IJLog.log("Cannot read " + file + ": " + e);
+			used.clear();
+		}
+	}
+
+	private void save() {
+		try {
+			DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+			Document doc = builder.newDocument();
+
+			Element root = doc.createElement("local-repo-usage");
+			doc.appendChild(root);
+			for (Map.Entry<String, Long> entry : used.entrySet()) {
+				Element nDir = doc.createElement("dir");
+				nDir.setAttribute("path", entry.getKey());
+				nDir.setAttribute("used", Long.toString(entry.getValue()));
+				root.appendChild(nDir);
+			}
+
+			Transformer transf = TransformerFactory.newInstance().newTransformer();
+			transf.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+			transf.setOutputProperty(OutputKeys.INDENT, "yes");
+			transf.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+
+			File parent = file.getParentFile();
+			if (!parent.exists() && !parent.mkdirs())
+				return;
+			transf.transform(new DOMSource(doc), new StreamResult(file.toURI().getPath()));
+		} catch (ParserConfigurationException | TransformerException e) {
+			IJLog.log("Cannot write " + file + ": " + e);
+		}
+	}
+}
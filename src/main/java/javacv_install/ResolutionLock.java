@@ -0,0 +1,227 @@
+package javacv_install;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Result of a resolution for a JavaCV version, a set of requested components
+ * and a platform: the resolved coordinates and the installed files with their
+ * sizes and hashes. When the installed files still match it, a check does not
+ * need to resolve anything.
+ */
+final class ResolutionLock {
+
+	private final File file;
+	private final String version;
+	private final String platform;
+	private final String components;
+	private final List<Entry> entries = new ArrayList<>();
+
+	static final class Entry {
+		private final String coords;
+		private final String path;
+		private final long size;
+		private final String sha1;
+		/** modification time of the installed file when its hash was last checked */
+		private long verified;
+
+		Entry(String coords, String path, long size, String sha1, long verified) {
+			this.coords = coords;
+			this.path = path;
+			this.size = size;
+			this.sha1 = sha1;
+			this.verified = verified;
+		}
+	}
+
+	ResolutionLock(String directory, String version, String platform, List<String> reqComps) {
+		this.version = version;
+		this.platform = platform;
+		this.components = String.join(" ", new TreeSet<>(reqComps));
+		this.file = new File(directory + "locks" + File.separator + "lock-" + version + "-" + platform + "-"
+				+ Integer.toHexString(components.hashCode()) + ".xml");
+	}
+
+	/**
+	 * Reads the lock file, returns false if it is missing or made for another
+	 * request.
+	 */
+	boolean load() {
+		entries.clear();
+		if (!file.exists())
+			return false;
+		try {
+			DocumentBuilder dBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+			Document doc = dBuilder.parse(file);
+			Element root = doc.getDocumentElement();
+			if (!version.equals(root.getAttribute("version")) || !platform.equals(root.getAttribute("platform"))
+					|| !components.equals(root.getAttribute("components")))
+				return false;
+			NodeList nFileList = root.getElementsByTagName("file");
+			for (int i = 0; i < nFileList.getLength(); i++) {
+				Element elem = (Element) nFileList.item(i);
+				entries.add(new Entry(elem.getAttribute("coords"), elem.getAttribute("path"),
+						Long.parseLong(elem.getAttribute("size")), elem.getAttribute("sha1"),
+						Long.parseLong(elem.getAttribute("verified"))));
+			}
+			return !entries.isEmpty();
+		} catch (SAXException | IOException | ParserConfigurationException | NumberFormatException e) {
+			if (ij.IJ.debugMode)
+				IJLog.log("Cannot read " + file + ": " + e);
+			entries.clear();
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the coordinates of the files installed for a JavaCV version and a
+	 * platform, by installed path, as recorded in all locks of this version.
+	 */
+	static Map<String, String> getCoords(String directory, String version, String platform) {
+		Map<String, String> coords = new HashMap<>();
+		File[] files = new File(directory + "locks").listFiles(
+				(dir, name) -> name.startsWith("lock-" + version + "-" + platform + "-") && name.endsWith(".xml"));
+		if (files == null)
+			return coords;
+		for (File file : files) {
+			try {
+				DocumentBuilder dBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+				Element root = dBuilder.parse(file).getDocumentElement();
+				if (!version.equals(root.getAttribute("version")) || !platform.equals(root.getAttribute("platform")))
+					continue;
+				NodeList nFileList = root.getElementsByTagName("file");
+				for (int i = 0; i < nFileList.getLength(); i++) {
+					Element elem = (Element) nFileList.item(i);
+					coords.put(elem.getAttribute("path"), elem.getAttribute("coords"));
+				}
+			} catch (SAXException | IOException | ParserConfigurationException e) {
+				if (ij.IJ.debugMode)
+					IJLog.log("Cannot read " + file + ": " + e);
+			}
+		}
+		return coords;
+	}
+
+	/**
+	 * Returns true if all locked files are installed and unchanged. A file is
+	 * hashed again only if its modification time differs from the one recorded
+	 * at the last check.
+	 */
+	boolean isSatisfied() {
+		boolean reverified = false;
+		try {
+			for (Entry entry : entries) {
+				Path path = Paths.get(entry.path);
+				if (!Files.isRegularFile(path) || Files.size(path) != entry.size)
+					return false;
+				long modified = Files.getLastModifiedTime(path).toMillis();
+				if (modified != entry.verified) {
+					if (!entry.sha1.equals(sha1(path)))
+						return false;
+					entry.verified = modified;
+					reverified = true;
+				}
+			}
+		} catch (IOException e) {
+			return false;
+		}
+		if (reverified)
+			save();
+		return true;
+	}
+
+	/**
+	 * Returns the installed files of the lock.
+	 */
+	List<Path> getPaths() {
+		List<Path> paths = new ArrayList<>();
+		for (Entry entry : entries)
+			paths.add(Paths.get(entry.path));
+		return paths;
+	}
+
+	/**
+	 * Adds a file installed from the local repository.
+	 */
+	void add(String coords, Path installed, Path source) throws IOException {
+		long verified = Files.isRegularFile(installed) ? Files.getLastModifiedTime(installed).toMillis() : -1;
+		entries.add(new Entry(coords, installed.toString(), Files.size(source), StagingCopier.hash(source), verified));
+	}
+
+	void save() {
+		try {
+			DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+			Document doc = builder.newDocument();
+
+			Element root = doc.createElement("JavaCV-lock");
+			root.setAttribute("version", version);
+			root.setAttribute("platform", platform);
+			root.setAttribute("components", components);
+			doc.appendChild(root);
+			for (Entry entry : entries) {
+				Element nFile = doc.createElement("file");
+				nFile.setAttribute("coords", entry.coords);
+				nFile.setAttribute("path", entry.path);
+				nFile.setAttribute("size", Long.toString(entry.size));
+				nFile.setAttribute("sha1", entry.sha1);
+				nFile.setAttribute("verified", Long.toString(entry.verified));
+				root.appendChild(nFile);
+			}
+
+			Transformer transf = TransformerFactory.newInstance().newTransformer();
+			transf.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+			transf.setOutputProperty(OutputKeys.INDENT, "yes");
+			transf.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+
+			JavaCV_Installer_launcher.checkCreateDirectory(file.getParent());
+			transf.transform(new DOMSource(doc), new StreamResult(file.toURI().getPath()));
+		} catch (ParserConfigurationException | TransformerException e) {
+			IJLog.log("Cannot write " + file + ": " + e);
+		}
+	}
+
+	static String sha1(Path path) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		try (InputStream is = Files.newInputStream(path)) {
+			byte[] buffer = new byte[1 << 16];
+			int count;
+			while ((count = is.read(buffer)) != -1)
+				digest.update(buffer, 0, count);
+		}
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest())
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		return hex.toString();
+	}
+}
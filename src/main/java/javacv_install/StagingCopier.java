@@ -0,0 +1,151 @@
+package javacv_install;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ij.IJ;
+import ij.Prefs;
+
+/**
+ * Copies files to the update folder concurrently. Content hashes are kept for
+ * the session (per path, size and modification time), so the files which are
+ * already in place can be recognized without reading them again. If enabled
+ * with the {@value #LINK_KEY} preference, the files are hard-linked from the
+ * local repository and copied only if a link cannot be made (e.g. across file
+ * systems). A linked file shares its content with the repository, so it is off
+ * by default.
+ */
+final class StagingCopier {
+
+	/** Preference key, files are hard-linked instead of copied when possible */
+	static final String LINK_KEY = "javacv.link_install";
+	/** Number of files copied concurrently */
+	private static final int STAGING_THREADS = 4;
+
+	private static final Map<Path, String[]> HASHES = new ConcurrentHashMap<>();
+
+	private final List<Path[]> copies = new ArrayList<>();
+	private final boolean linked;
+
+	/**
+	 * Creates a copier which links the files only if enabled by the preference.
+	 */
+	StagingCopier() {
+		this(Prefs.get(LINK_KEY, false));
+	}
+
+	/**
+	 * Creates a copier which links the files whenever possible if linked is true
+	 * (e.g. for the immutable files of a stored profile), whatever the
+	 * preference.
+	 */
+	StagingCopier(boolean linked) {
+		this.linked = linked;
+	}
+
+	/**
+	 * Returns the SHA-1 of the file, computed only once while the file is not
+	 * modified.
+	 */
+	static String hash(Path path) throws IOException {
+		Path key = path.toAbsolutePath().normalize();
+		String stamp = Files.size(key) + ":" + Files.getLastModifiedTime(key).toMillis();
+		String[] cached = HASHES.get(key);
+		if (cached != null && cached[0].equals(stamp))
+			return cached[1];
+		String sha1 = ResolutionLock.sha1(key);
+		HASHES.put(key, new String[] { stamp, sha1 });
+		return sha1;
+	}
+
+	/**
+	 * Returns true if both files exist and have the same size and content.
+	 */
+	static boolean isIdentical(Path file1, Path file2) throws IOException {
+		return Files.isRegularFile(file1) && Files.isRegularFile(file2) && Files.size(file1) == Files.size(file2)
+				&& hash(file1).equals(hash(file2));
+	}
+
+	/**
+	 * Links (if enabled) or copies a file with FileChannel.transferTo and returns
+	 * the number of bytes written.
+	 */
+	static long copy(Path src, Path dst) throws IOException {
+		return copy(src, dst, Prefs.get(LINK_KEY, false));
+	}
+
+	private static long copy(Path src, Path dst, boolean linked) throws IOException {
+		// never written in place, it may be a link to the source
+		Files.deleteIfExists(dst);
+		if (linked && link(src, dst))
+			return 0;
+		try (FileChannel in = FileChannel.open(src, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(dst, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			long size = in.size();
+			long position = 0;
+			while (position < size)
+				position += in.transferTo(position, size - position, out);
+			return position;
+		}
+	}
+
+	private static boolean link(Path src, Path dst) {
+		try {
+			Files.createLink(dst, src);
+			return true;
+		} catch (IOException | UnsupportedOperationException | SecurityException e) {
+			if (IJ.debugMode)
+				IJLog.log("Cannot link " + dst + ", copying: " + e);
+			return false;
+		}
+	}
+
+	void add(Path src, Path dst) {
+		copies.add(new Path[] { src, dst });
+	}
+
+	boolean isEmpty() {
+		return copies.isEmpty();
+	}
+
+	/**
+	 * Links or copies all added files and returns the number of bytes written.
+	 * Throws the first error after all copies are finished.
+	 */
+	long run() throws Exception {
+		if (copies.isEmpty())
+			return 0;
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(STAGING_THREADS, copies.size()));
+		try {
+			List<Future<Long>> futures = new ArrayList<>();
+			for (Path[] copy : copies)
+				futures.add(pool.submit(() -> copy(copy[0], copy[1], linked)));
+			long bytes = 0;
+			Exception error = null;
+			for (Future<Long> future : futures) {
+				try {
+					bytes += future.get();
+				} catch (ExecutionException e) {
+					if (error == null)
+						error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+				}
+			}
+			if (error != null)
+				throw error;
+			return bytes;
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
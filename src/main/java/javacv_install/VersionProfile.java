@@ -0,0 +1,230 @@
+package javacv_install;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import ij.IJ;
+import ij.Prefs;
+
+/**
+ * Installed state of a JavaCV version: its components and installed files,
+ * with a hard link to each file kept in the profile directory. A version with a
+ * complete profile can be installed again by linking these files to the update
+ * folder, without any resolution or copy. Only the profiles of the last used
+ * versions are kept ({@value #MAX_PROFILES_KEY}).
+ */
+final class VersionProfile {
+
+	/** Preference key with the number of the kept profiles */
+	static final String MAX_PROFILES_KEY = "javacv.max_profiles";
+	private static final double DEFAULT_MAX_PROFILES = 3;
+
+	private final String imagejDirectory;
+	private final File directory;
+	private final String version;
+	private final Set<String> components = new TreeSet<>();
+	/** installed path -> linked file in the profile */
+	private final Map<String, Path> artifacts = new TreeMap<>();
+	/** installed path -> coordinates and file in the local repository, if known */
+	private final Map<String, String[]> origins = new TreeMap<>();
+	private boolean complete = true;
+
+	VersionProfile(String installerDirectory, String imagejDirectory, String version) {
+		this.imagejDirectory = imagejDirectory;
+		this.version = version;
+		this.directory = new File(installerDirectory + "profiles" + File.separator + version);
+	}
+
+	String getVersion() {
+		return version;
+	}
+
+	Set<String> getComponents() {
+		return components;
+	}
+
+	Map<String, Path> getArtifacts() {
+		return artifacts;
+	}
+
+	/**
+	 * Returns the coordinates and the file in the local repository of an
+	 * installed file, or null if they are not known.
+	 */
+	String[] getOrigin(String installedPath) {
+		return origins.get(installedPath);
+	}
+
+	void setComponents(Collection<String> components) {
+		this.components.clear();
+		this.components.addAll(components);
+	}
+
+	/**
+	 * Returns true if the profile has all the components and all its files.
+	 */
+	boolean covers(Collection<String> reqComps) {
+		if (!complete || artifacts.isEmpty() || !components.containsAll(reqComps))
+			return false;
+		for (Path path : artifacts.values())
+			if (!Files.isRegularFile(path))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Links the source of an installed file into the profile. If the link cannot
+	 * be made (e.g. across file systems), the profile is marked as incomplete
+	 * rather than holding a copy. The coordinates may be null if not known.
+	 */
+	void add(String installedPath, Path source, String coords) {
+		String relPath = installedPath.startsWith(imagejDirectory) ? installedPath.substring(imagejDirectory.length())
+				: Paths.get(installedPath).getFileName().toString();
+		Path target = directory.toPath().resolve(relPath);
+		try {
+			// the link made by an earlier install is not read again
+			if (!(Files.exists(target) && Files.isSameFile(source, target))
+					&& !StagingCopier.isIdentical(source, target)) {
+				Files.createDirectories(target.getParent());
+				Files.deleteIfExists(target);
+				Files.createLink(target, source);
+			}
+			artifacts.put(installedPath, target);
+			if (coords != null)
+				origins.put(installedPath, new String[] { coords, source.toString() });
+			else
+				origins.remove(installedPath);
+		} catch (IOException | UnsupportedOperationException | SecurityException e) {
+			if (IJ.debugMode)
+				IJLog.log("Cannot link " + source + " to the profile of version " + version + ": " + e);
+			complete = false;
+		}
+	}
+
+	boolean load() {
+		File file = new File(directory, "profile.xml");
+		if (!file.exists())
+			return false;
+		try {
+			DocumentBuilder dBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+			Document doc = dBuilder.parse(file);
+			Element root = doc.getDocumentElement();
+			if (!version.equals(root.getAttribute("version")))
+				return false;
+			complete = Boolean.parseBoolean(root.getAttribute("complete"));
+			NodeList nCompList = root.getElementsByTagName("component");
+			for (int i = 0; i < nCompList.getLength(); i++)
+				components.add(nCompList.item(i).getTextContent());
+			NodeList nArtList = root.getElementsByTagName("artifact");
+			for (int i = 0; i < nArtList.getLength(); i++) {
+				Element nArt = (Element) nArtList.item(i);
+				artifacts.put(nArt.getAttribute("path"), directory.toPath().resolve(nArt.getAttribute("file")));
+				if (nArt.hasAttribute("coords"))
+					origins.put(nArt.getAttribute("path"),
+							new String[] { nArt.getAttribute("coords"), nArt.getAttribute("source") });
+			}
+			return true;
+		} catch (SAXException | IOException | ParserConfigurationException e) {
+			if (IJ.debugMode)
+				IJLog.log("Cannot read " + file + ": " + e);
+			components.clear();
+			artifacts.clear();
+			origins.clear();
+			return false;
+		}
+	}
+
+	void save() {
+		File file = new File(directory, "profile.xml");
+		try {
+			DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+			Document doc = builder.newDocument();
+
+			Element root = doc.createElement("JavaCV-profile");
+			root.setAttribute("version", version);
+			root.setAttribute("complete", Boolean.toString(complete));
+			doc.appendChild(root);
+			for (String component : components) {
+				Element nComp = doc.createElement("component");
+				nComp.appendChild(doc.createTextNode(component));
+				root.appendChild(nComp);
+			}
+			for (Map.Entry<String, Path> artifact : artifacts.entrySet()) {
+				Element nArt = doc.createElement("artifact");
+				nArt.setAttribute("path", artifact.getKey());
+				nArt.setAttribute("file", directory.toPath().relativize(artifact.getValue()).toString());
+				String[] origin = origins.get(artifact.getKey());
+				if (origin != null) {
+					nArt.setAttribute("coords", origin[0]);
+					nArt.setAttribute("source", origin[1]);
+				}
+				root.appendChild(nArt);
+			}
+
+			Transformer transf = TransformerFactory.newInstance().newTransformer();
+			transf.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+			transf.setOutputProperty(OutputKeys.INDENT, "yes");
+			transf.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+
+			if (!directory.exists() && !directory.mkdirs())
+				return;
+			transf.transform(new DOMSource(doc), new StreamResult(file.toURI().getPath()));
+		} catch (ParserConfigurationException | TransformerException e) {
+			IJLog.log("Cannot write " + file + ": " + e);
+		}
+	}
+
+	/**
+	 * Deletes the least recently saved profiles, so that only the number set by
+	 * {@value #MAX_PROFILES_KEY} is kept (0 for no limit). The profile of the
+	 * given version is kept in any case.
+	 */
+	static void prune(String installerDirectory, String keptVersion) {
+		int maxProfiles = (int) Prefs.get(MAX_PROFILES_KEY, DEFAULT_MAX_PROFILES);
+		File[] dirs = new File(installerDirectory + "profiles").listFiles(File::isDirectory);
+		if (maxProfiles <= 0 || dirs == null || dirs.length <= maxProfiles)
+			return;
+		Arrays.sort(dirs, Comparator.comparingLong((File dir) -> new File(dir, "profile.xml").lastModified())
+				.reversed());
+		int count = 0;
+		for (File dir : dirs) {
+			if (dir.getName().equals(keptVersion) || ++count <= maxProfiles - 1)
+				continue;
+			// only links are deleted, the local repository keeps its files
+			try (Stream<Path> stream = Files.walk(dir.toPath())) {
+				stream.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+			} catch (IOException e) {
+				IJLog.log("Cannot delete the profile " + dir + ": " + e);
+				continue;
+			}
+			if (IJ.debugMode)
+				IJLog.log("Profile of version " + dir.getName() + " deleted");
+		}
+	}
+}
@@ -0,0 +1,214 @@
+package javacv_install;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.eclipse.aether.util.version.GenericVersionScheme;
+import org.eclipse.aether.version.InvalidVersionSpecificationException;
+import org.eclipse.aether.version.Version;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Versions of an artifact kept on disk between sessions. The list is taken from
+ * maven-metadata.xml of the remote repository and revalidated with a
+ * conditional request (ETag / If-Modified-Since) once it is older than the
+ * configured time to live.
+ */
+final class VersionsCache {
+
+	private static final int TIMEOUT = 30000;
+
+	private final File file;
+	private final String metadataURL;
+	private final long ttl;
+
+	private List<String> versions;
+	private String newestVersion;
+	private String etag;
+	private String lastModified;
+	private long checked;
+
+	/**
+	 * @param file        where the cache is stored
+	 * @param metadataURL URL of maven-metadata.xml of the artifact
+	 * @param ttl         time (ms) during which the cache is used without any
+	 *                    network request
+	 */
+	VersionsCache(File file, String metadataURL, long ttl) {
+		this.file = file;
+		this.metadataURL = metadataURL;
+		this.ttl = ttl;
+		this.versions = new ArrayList<>();
+	}
+
+	List<String> getVersions() {
+		return versions;
+	}
+
+	String getNewestVersion() {
+		return newestVersion;
+	}
+
+	boolean isEmpty() {
+		return versions.isEmpty();
+	}
+
+	boolean isFresh() {
+		return !isEmpty() && System.currentTimeMillis() - checked < ttl;
+	}
+
+	/**
+	 * Reads the cache file, returns false if it is missing or incorrect.
+	 */
+	boolean load() {
+		if (!file.exists())
+			return false;
+		try {
+			DocumentBuilder dBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+			Document doc = dBuilder.parse(file);
+			Element root = doc.getDocumentElement();
+			List<String> list = new ArrayList<>();
+			NodeList nVerList = root.getElementsByTagName("version");
+			for (int i = 0; i < nVerList.getLength(); i++)
+				list.add(nVerList.item(i).getTextContent());
+			if (list.isEmpty())
+				return false;
+			versions = list;
+			newestVersion = root.getAttribute("newest");
+			etag = root.getAttribute("etag");
+			lastModified = root.getAttribute("last-modified");
+			checked = Long.parseLong(root.getAttribute("checked"));
+			if (newestVersion.isEmpty())
+				newestVersion = versions.get(versions.size() - 1);
+			return true;
+		} catch (SAXException | IOException | ParserConfigurationException | NumberFormatException e) {
+			if (ij.IJ.debugMode)
+				IJLog.log("Cannot read " + file + ": " + e);
+			return false;
+		}
+	}
+
+	/**
+	 * Asks the repository if maven-metadata.xml has changed since the last check.
+	 * A 304 answer only renews the check time, otherwise the versions are parsed
+	 * from the new metadata. The cache file is updated in both cases.
+	 */
+	void revalidate() throws IOException {
+		HttpURLConnection conn = (HttpURLConnection) new URL(metadataURL).openConnection();
+		conn.setConnectTimeout(TIMEOUT);
+		conn.setReadTimeout(TIMEOUT);
+		if (!isEmpty()) {
+			if (etag != null && !etag.isEmpty())
+				conn.setRequestProperty("If-None-Match", etag);
+			if (lastModified != null && !lastModified.isEmpty())
+				conn.setRequestProperty("If-Modified-Since", lastModified);
+		}
+		int code = conn.getResponseCode();
+		if (code == HttpURLConnection.HTTP_NOT_MODIFIED && !isEmpty()) {
+			conn.disconnect();
+		} else if (code == HttpURLConnection.HTTP_OK) {
+			try (InputStream is = conn.getInputStream()) {
+				parseMetadata(is);
+			}
+			etag = conn.getHeaderField("ETag");
+			lastModified = conn.getHeaderField("Last-Modified");
+		} else {
+			conn.disconnect();
+			throw new IOException("Unexpected response " + code + " from " + metadataURL);
+		}
+		checked = System.currentTimeMillis();
+		save();
+	}
+
+	/**
+	 * Replaces the cached versions, e.g. with the result of a version range
+	 * request.
+	 */
+	void update(List<String> versions, String newestVersion) {
+		this.versions = new ArrayList<>(versions);
+		this.newestVersion = newestVersion;
+		etag = null;
+		lastModified = null;
+		checked = System.currentTimeMillis();
+		save();
+	}
+
+	private void parseMetadata(InputStream is) throws IOException {
+		Document doc;
+		try {
+			doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(is);
+		} catch (SAXException | ParserConfigurationException e) {
+			throw new IOException("Incorrect metadata at " + metadataURL, e);
+		}
+		// same order as the result of a version range request
+		GenericVersionScheme scheme = new GenericVersionScheme();
+		List<Version> list = new ArrayList<>();
+		NodeList nVersions = doc.getElementsByTagName("versions");
+		if (nVersions.getLength() == 0)
+			throw new IOException("No versions found at " + metadataURL);
+		NodeList nVerList = ((Element) nVersions.item(0)).getElementsByTagName("version");
+		for (int i = 0; i < nVerList.getLength(); i++) {
+			try {
+				list.add(scheme.parseVersion(nVerList.item(i).getTextContent().trim()));
+			} catch (InvalidVersionSpecificationException e) {
+				IJLog.log("Ignoring version " + nVerList.item(i).getTextContent());
+			}
+		}
+		if (list.isEmpty())
+			throw new IOException("No versions found at " + metadataURL);
+		list.sort(null);
+		versions = new ArrayList<>();
+		for (Version version : list)
+			versions.add(version.toString());
+		newestVersion = versions.get(versions.size() - 1);
+	}
+
+	private void save() {
+		try {
+			DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+			Document doc = builder.newDocument();
+
+			Element root = doc.createElement("versions");
+			root.setAttribute("newest", newestVersion);
+			root.setAttribute("checked", Long.toString(checked));
+			if (etag != null)
+				root.setAttribute("etag", etag);
+			if (lastModified != null)
+				root.setAttribute("last-modified", lastModified);
+			doc.appendChild(root);
+			for (String version : versions) {
+				Element nVer = doc.createElement("version");
+				nVer.appendChild(doc.createTextNode(version));
+				root.appendChild(nVer);
+			}
+
+			Transformer transf = TransformerFactory.newInstance().newTransformer();
+			transf.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+			transf.setOutputProperty(OutputKeys.INDENT, "yes");
+			transf.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+
+			JavaCV_Installer_launcher.checkCreateDirectory(file.getParent());
+			transf.transform(new DOMSource(doc), new StreamResult(file.toURI().getPath()));
+		} catch (ParserConfigurationException | TransformerException e) {
+			IJLog.log("Cannot write " + file + ": " + e);
+		}
+	}
+}